@@ -24,6 +24,7 @@ import org.eclipse.swt.widgets.*;
 import java.io.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
 
 import jhi.swtcommons.gui.i18n.*;
 import jhi.swtcommons.gui.layout.*;
@@ -39,6 +40,10 @@ import jhi.swtcommons.util.*;
 public abstract class RestartableApplication
 {
 	private static final String SHELL_ID = UUID.randomUUID().toString();
+
+	/** The maximum time to wait for pending asynchronous stores of the {@link PropertyReader} on restart and shutdown (in seconds) */
+	private static final long FLUSH_TIMEOUT = 5;
+
 	protected final Shell   shell;
 	protected final Display display;
 
@@ -57,6 +62,7 @@ public abstract class RestartableApplication
 		try
 		{
 			propertyReader.load();
+			propertyReader.markClean();
 		}
 		catch (IOException e)
 		{
@@ -260,16 +266,18 @@ public abstract class RestartableApplication
 
 	/**
 	 * Causes the application to restart. <p> This includes: <ul> <li>Calling {@link PropertyReader#store()}</li> <li>Calling {@link
-	 * ParameterStore#clear()}</li> <li>Calling {@link PropertyReader#load()}</li> <li>Calling {@link RB#reset()}</li> <li>Calling {@link
-	 * RestartableApplication#onStart()}</li> </ul>
+	 * ParameterStores#restart()}</li> <li>Calling {@link PropertyReader#flush(long, TimeUnit)}</li> <li>Calling {@link PropertyReader#load()}</li>
+	 * <li>Calling {@link RB#reset()}</li> <li>Calling {@link RestartableApplication#onStart()}</li> </ul>
 	 */
 	protected void onRestart()
 	{
 		try
 		{
 			propertyReader.store();
-			CommonParameterStore.getInstance().clear();
+			ParameterStores.restart();
+			propertyReader.flush(FLUSH_TIMEOUT, TimeUnit.SECONDS);
 			propertyReader.load();
+			propertyReader.markClean();
 		}
 		catch (IOException e)
 		{
@@ -284,7 +292,7 @@ public abstract class RestartableApplication
 	}
 
 	/**
-	 * Shuts the application down
+	 * Shuts the application down. Pending asynchronous stores of the {@link PropertyReader} get {@link #FLUSH_TIMEOUT} seconds to finish.
 	 */
 	protected void shutdown()
 	{
@@ -300,6 +308,8 @@ public abstract class RestartableApplication
 			e.printStackTrace();
 			/* Do nothing here, since we're already shutting down */
 		}
+		propertyReader.flush(FLUSH_TIMEOUT, TimeUnit.SECONDS);
+		ParameterStores.shutdown();
 		System.exit(0);
 	}
 
@@ -21,12 +21,17 @@ import java.io.*;
 import java.net.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class RB
 {
 	private static ResourceBundle BUNDLE_INTERNAL;
 	private static ResourceBundle BUNDLE;
 
+	/** The compiled messages of {@link #BUNDLE} and {@link #BUNDLE_INTERNAL} keyed by the resource key. Cleared by {@link #reset()}. */
+	private static final Map<String, Message> MESSAGES          = new ConcurrentHashMap<>();
+	private static final Map<String, Message> MESSAGES_INTERNAL = new ConcurrentHashMap<>();
+
 	public static final String WINDOW_BUTTON_ABORT      = "window.button.abort";
 	public static final String WINDOW_BUTTON_BACK       = "window.button.back";
 	public static final String WINDOW_BUTTON_CANCEL     = "window.button.cancel";
@@ -69,6 +74,9 @@ public class RB
 		{
 			e.printStackTrace();
 		}
+
+		MESSAGES.clear();
+		MESSAGES_INTERNAL.clear();
 	}
 
 	/**
@@ -87,12 +95,7 @@ public class RB
 		if (BUNDLE == null)
 			reset();
 
-		String result = BUNDLE.getString(key);
-
-		// if (arguments != null && arguments.length > 0)
-		result = MessageFormat.format(result, arguments);
-
-		return result;
+		return getMessage(BUNDLE, MESSAGES, key).format(arguments);
 	}
 
 	/**
@@ -110,12 +113,59 @@ public class RB
 		if (BUNDLE_INTERNAL == null)
 			reset();
 
-		String result = BUNDLE_INTERNAL.getString(key);
+		return getMessage(BUNDLE_INTERNAL, MESSAGES_INTERNAL, key).format(arguments);
+	}
+
+	/**
+	 * Returns the cached {@link Message} for the given key. The {@link Message} is compiled again if the default {@link Locale} for formatting has
+	 * changed.
+	 */
+	private static Message getMessage(ResourceBundle bundle, Map<String, Message> cache, String key)
+	{
+		Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+		Message message = cache.get(key);
+
+		if (message == null || !message.locale.equals(locale))
+		{
+			message = new Message(bundle.getString(key), locale);
+			cache.put(key, message);
+		}
+
+		return message;
+	}
 
-		// if (arguments != null && arguments.length > 0)
-		result = MessageFormat.format(result, arguments);
+	/**
+	 * A resource {@link String} and its {@link MessageFormat}, which is created on first use and reused afterwards. {@link MessageFormat} isn't
+	 * thread-safe, so formatting synchronizes on the {@link Message}.
+	 */
+	private static class Message
+	{
+		private final String        pattern;
+		private final Locale        locale;
+		private final boolean       plain;
+		private       MessageFormat format;
+
+		private Message(String pattern, Locale locale)
+		{
+			this.pattern = pattern;
+			this.locale = locale;
+			/* Without quotes and placeholders, MessageFormat returns the pattern as it is */
+			this.plain = pattern.indexOf('\'') == -1 && pattern.indexOf('{') == -1;
+		}
 
-		return result;
+		private String format(Object[] arguments)
+		{
+			if (plain)
+				return pattern;
+
+			synchronized (this)
+			{
+				if (format == null)
+					format = new MessageFormat(pattern, locale);
+
+				return format.format(arguments);
+			}
+		}
 	}
 
 	/**
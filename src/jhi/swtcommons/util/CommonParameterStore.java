@@ -18,17 +18,24 @@
 package jhi.swtcommons.util;
 
 /**
+ * {@link CommonParameterStore} is the default {@link ParameterStore} of the application.
+ *
  * @author Sebastian Raubach
+ * @see ParameterStores
  */
 public class CommonParameterStore extends ParameterStore
 {
-	private static CommonParameterStore INSTANCE;
-
-	public static synchronized ParameterStore getInstance()
+	/**
+	 * The instance is created when {@link Holder} is first accessed. The class loader guarantees that this happens exactly once, so {@link
+	 * #getInstance()} doesn't need any locking.
+	 */
+	private static class Holder
 	{
-		if (INSTANCE == null)
-			INSTANCE = new CommonParameterStore();
+		private static final CommonParameterStore INSTANCE = new CommonParameterStore();
+	}
 
-		return INSTANCE;
+	public static ParameterStore getInstance()
+	{
+		return Holder.INSTANCE;
 	}
 }
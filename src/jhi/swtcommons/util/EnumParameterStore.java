@@ -0,0 +1,351 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * {@link EnumParameterStore} is a {@link ParameterStore} for applications whose {@link Parameter}s are constants of a single enum. Values of these
+ * {@link Parameter}s are kept in an {@link AtomicReferenceArray} indexed by {@link Enum#ordinal()}, so reading them is a plain array access without
+ * any hashing. {@link Parameter}s that aren't constants of the given enum are kept in the default map.
+ * <p>
+ * {@link Parameter}s with a numeric or {@link Boolean} {@link Parameter#getType()} additionally have a primitive slot. Values written via {@link
+ * #putInt(Parameter, int)} and friends are stored there without boxing and are only boxed (once) if they are requested via {@link #get(Parameter)}.
+ *
+ * @param <E> The enum type of the {@link Parameter}s
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public class EnumParameterStore<E extends Enum<E> & Parameter> extends ParameterStore
+{
+	private static final byte OBJECT  = 0;
+	private static final byte INTEGER = 1;
+	private static final byte LONG    = 2;
+	private static final byte FLOAT   = 3;
+	private static final byte DOUBLE  = 4;
+	private static final byte BOOLEAN = 5;
+
+	/** Marks a slot whose current value only exists in {@link #primitives} */
+	private static final Object UNBOXED = new Object();
+
+	private final Class<E>                     keyType;
+	private final E[]                          constants;
+	private final AtomicReferenceArray<Object> slots;
+	private final AtomicLongArray              primitives;
+	private final byte[]                       kinds;
+	private final ParameterCodec<?>[]          codecs;
+
+	/**
+	 * Creates a new {@link EnumParameterStore} for the {@link Parameter}s of the given enum
+	 *
+	 * @param keyType The enum {@link Class} of the {@link Parameter}s
+	 */
+	public EnumParameterStore(Class<E> keyType)
+	{
+		this.keyType = keyType;
+		this.constants = keyType.getEnumConstants();
+		this.slots = new AtomicReferenceArray<>(constants.length);
+		this.primitives = new AtomicLongArray(constants.length);
+		this.kinds = new byte[constants.length];
+		this.codecs = new ParameterCodec<?>[constants.length];
+
+		for (E constant : constants)
+			kinds[constant.ordinal()] = getKind(constant.getType());
+	}
+
+	private static byte getKind(Class<?> type)
+	{
+		if (Integer.class.equals(type))
+			return INTEGER;
+		else if (Long.class.equals(type))
+			return LONG;
+		else if (Float.class.equals(type))
+			return FLOAT;
+		else if (Double.class.equals(type))
+			return DOUBLE;
+		else if (Boolean.class.equals(type))
+			return BOOLEAN;
+		else
+			return OBJECT;
+	}
+
+	/**
+	 * Returns the enum {@link Class} of the {@link Parameter}s held in the array slots
+	 *
+	 * @return The enum {@link Class} of the {@link Parameter}s held in the array slots
+	 */
+	public Class<E> getKeyType()
+	{
+		return keyType;
+	}
+
+	/**
+	 * Returns the array slot of the given {@link Parameter} or <code>-1</code> if it isn't a constant of {@link #keyType}
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return The array slot of the given {@link Parameter} or <code>-1</code>
+	 */
+	protected int slot(Parameter key)
+	{
+		return keyType.isInstance(key) ? ((Enum<?>) key).ordinal() : -1;
+	}
+
+	@Override
+	protected ParameterCodec<?> getCodec(Parameter key)
+	{
+		int slot = slot(key);
+
+		if (slot < 0)
+			return super.getCodec(key);
+
+		ParameterCodec<?> codec = codecs[slot];
+
+		if (codec == null)
+		{
+			codec = ParameterCodecs.get(key.getType());
+			codecs[slot] = codec;
+		}
+
+		return codec;
+	}
+
+	@Override
+	protected Object getValue(Parameter key)
+	{
+		int slot = slot(key);
+
+		if (slot < 0)
+			return super.getValue(key);
+
+		Object value = slots.get(slot);
+
+		if (value == UNBOXED)
+			return box(slot);
+		else
+			return value;
+	}
+
+	@Override
+	protected Object putValue(Parameter key, Object value)
+	{
+		int slot = slot(key);
+
+		if (slot < 0)
+			return super.putValue(key, value);
+		else
+			return previous(slot, slots.getAndSet(slot, value));
+	}
+
+	@Override
+	protected Object removeValue(Parameter key)
+	{
+		int slot = slot(key);
+
+		if (slot < 0)
+			return super.removeValue(key);
+		else
+			return previous(slot, slots.getAndSet(slot, null));
+	}
+
+	@Override
+	protected boolean hasValue(Parameter key)
+	{
+		int slot = slot(key);
+
+		if (slot < 0)
+			return super.hasValue(key);
+		else
+			return slots.get(slot) != null;
+	}
+
+	@Override
+	protected void forEachValue(BiConsumer<Parameter, Object> consumer)
+	{
+		for (int i = 0; i < constants.length; i++)
+		{
+			Object value = getValue(constants[i]);
+
+			if (value != null)
+				consumer.accept(constants[i], value);
+		}
+
+		super.forEachValue(consumer);
+	}
+
+	@Override
+	protected void clearValues()
+	{
+		for (int i = 0; i < slots.length(); i++)
+			slots.set(i, null);
+
+		super.clearValues();
+	}
+
+	@Override
+	protected long getLongValue(Parameter key, long fallback)
+	{
+		int slot = slot(key);
+
+		if (slot < 0 || kinds[slot] == OBJECT || slots.get(slot) != UNBOXED)
+			return super.getLongValue(key, fallback);
+
+		long bits = primitives.get(slot);
+
+		if (kinds[slot] == FLOAT || kinds[slot] == DOUBLE)
+			return (long) Double.longBitsToDouble(bits);
+		else
+			return bits;
+	}
+
+	@Override
+	protected double getDoubleValue(Parameter key, double fallback)
+	{
+		int slot = slot(key);
+
+		if (slot < 0 || kinds[slot] == OBJECT || slots.get(slot) != UNBOXED)
+			return super.getDoubleValue(key, fallback);
+
+		long bits = primitives.get(slot);
+
+		if (kinds[slot] == FLOAT || kinds[slot] == DOUBLE)
+			return Double.longBitsToDouble(bits);
+		else
+			return bits;
+	}
+
+	@Override
+	protected boolean putLongValue(Parameter key, long value)
+	{
+		int slot = slot(key);
+
+		if (slot < 0 || kinds[slot] == OBJECT)
+			return super.putLongValue(key, value);
+
+		long bits;
+		switch (kinds[slot])
+		{
+			case INTEGER:
+				bits = (int) value;
+				break;
+			case FLOAT:
+				bits = Double.doubleToRawLongBits((float) value);
+				break;
+			case DOUBLE:
+				bits = Double.doubleToRawLongBits((double) value);
+				break;
+			case BOOLEAN:
+				bits = value != 0 ? 1 : 0;
+				break;
+			default:
+				bits = value;
+		}
+
+		return putBits(slot, bits);
+	}
+
+	@Override
+	protected boolean putDoubleValue(Parameter key, double value)
+	{
+		int slot = slot(key);
+
+		if (slot < 0 || kinds[slot] == OBJECT)
+			return super.putDoubleValue(key, value);
+
+		long bits;
+		switch (kinds[slot])
+		{
+			case INTEGER:
+				bits = (int) value;
+				break;
+			case LONG:
+				bits = (long) value;
+				break;
+			case FLOAT:
+				bits = Double.doubleToRawLongBits((float) value);
+				break;
+			case BOOLEAN:
+				bits = value != 0 ? 1 : 0;
+				break;
+			default:
+				bits = Double.doubleToRawLongBits(value);
+		}
+
+		return putBits(slot, bits);
+	}
+
+	/**
+	 * Stores the given primitive bits and marks the slot as {@link #UNBOXED}. Writers of primitive bits are serialized so that {@link #box(int)}
+	 * never caches a box of outdated bits.
+	 *
+	 * @return <code>true</code> if the stored value has changed
+	 */
+	private synchronized boolean putBits(int slot, long bits)
+	{
+		long previousBits = primitives.getAndSet(slot, bits);
+		Object previous = slots.getAndSet(slot, UNBOXED);
+
+		if (previous == UNBOXED)
+			return previousBits != bits;
+		else
+			return !Objects.equals(previous, decode(slot, bits));
+	}
+
+	/**
+	 * Boxes the primitive bits of the given slot and caches the box in the slot unless it has been replaced in the meantime
+	 */
+	private synchronized Object box(int slot)
+	{
+		Object value = slots.get(slot);
+
+		if (value != UNBOXED)
+			return value;
+
+		Object boxed = decode(slot, primitives.get(slot));
+
+		if (slots.compareAndSet(slot, UNBOXED, boxed))
+			return boxed;
+		else
+			return slots.get(slot);
+	}
+
+	private Object previous(int slot, Object value)
+	{
+		return value == UNBOXED ? decode(slot, primitives.get(slot)) : value;
+	}
+
+	private Object decode(int slot, long bits)
+	{
+		switch (kinds[slot])
+		{
+			case INTEGER:
+				return (int) bits;
+			case LONG:
+				return bits;
+			case FLOAT:
+				return (float) Double.longBitsToDouble(bits);
+			case DOUBLE:
+				return Double.longBitsToDouble(bits);
+			case BOOLEAN:
+				return bits != 0;
+			default:
+				return null;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * {@link LayeredPropertyReader} is a {@link PropertyReader} that resolves its properties from several {@link Layer}s. Each {@link Layer} overrides
+ * the ones before it: the defaults within the jar, an optional site-wide file, an optional user file, system properties and environment variables.
+ * <p>
+ * The {@link Layer}s are flattened into a single immutable map on {@link #load()}, so lookups don't depend on the number of {@link Layer}s. The
+ * map is only rebuilt if a {@link Layer} has actually changed since the last {@link #load()}. {@link #getSource(String)} returns the {@link Layer}
+ * that a property has been taken from.
+ * <p>
+ * System properties and environment variables are only considered if a prefix is given. A system property <code>prefix + key</code> overrides the
+ * property <code>key</code>. An environment variable overrides a property that's defined in another {@link Layer} if its name is the upper case
+ * version of <code>prefix + key</code> with all characters other than letters and digits replaced by underscores (e.g. <code>MYAPP_RECENT_FILES</code>
+ * for the prefix <code>myapp.</code> and the key <code>recent.files</code>).
+ * <p>
+ * Only the properties that have been changed via {@link #set(String, String)} are stored, even if the user file doesn't exist yet, so values of
+ * the other {@link Layer}s don't become part of it. Changes that haven't been stored yet are kept when the {@link Layer}s are loaded again.
+ *
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public abstract class LayeredPropertyReader extends PropertyReader
+{
+	private final File   siteFile;
+	private final File   userFile;
+	private final String prefix;
+
+	private final Map<Layer, Map<String, String>> layers = new EnumMap<>(Layer.class);
+	private final Map<Layer, List<Long>>          stamps = new EnumMap<>(Layer.class);
+	private volatile Map<String, Layer> sources = Collections.emptyMap();
+
+	/**
+	 * Creates a new {@link LayeredPropertyReader}
+	 *
+	 * @param propertiesFile The name of the properties file within the jar that contains the defaults
+	 * @param siteFile       The site-wide properties {@link File} or <code>null</code>
+	 * @param userFile       The properties {@link File} of the user or <code>null</code>
+	 * @param prefix         The prefix of system properties and environment variables or <code>null</code> to ignore them
+	 */
+	public LayeredPropertyReader(String propertiesFile, File siteFile, File userFile, String prefix)
+	{
+		super(propertiesFile);
+
+		this.siteFile = siteFile;
+		this.userFile = userFile;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Resolves the {@link Layer}s and publishes the flattened properties. Files that haven't changed since the last call aren't read again and
+	 * nothing is published if none of the {@link Layer}s has changed.
+	 *
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	@Override
+	public synchronized void load() throws IOException
+	{
+		boolean changed = layers.isEmpty();
+
+		if (!layers.containsKey(Layer.DEFAULTS))
+		{
+			try (InputStream stream = getClass().getResourceAsStream(propertiesFile))
+			{
+				layers.put(Layer.DEFAULTS, read(stream));
+			}
+		}
+
+		changed |= refresh(Layer.SITE, siteFile);
+		changed |= refresh(Layer.USER, userFile);
+
+		if (prefix != null)
+		{
+			Map<String, String> system = new HashMap<>();
+			for (String name : System.getProperties().stringPropertyNames())
+			{
+				if (name.startsWith(prefix) && name.length() > prefix.length())
+					system.put(name.substring(prefix.length()), System.getProperty(name));
+			}
+			changed |= update(Layer.SYSTEM, system);
+
+			Set<String> keys = new HashSet<>();
+			for (Map<String, String> layer : layers.values())
+				keys.addAll(layer.keySet());
+
+			Map<String, String> environment = new HashMap<>();
+			for (String key : keys)
+			{
+				String value = System.getenv(getEnvironmentName(key));
+
+				if (value != null)
+					environment.put(key, value);
+			}
+			changed |= update(Layer.ENVIRONMENT, environment);
+		}
+
+		if (!changed)
+			return;
+
+		/* The EnumMap iterates in the order of precedence */
+		Map<String, String> values = new HashMap<>();
+		Map<String, Layer> origin = new HashMap<>();
+
+		layers.forEach((layer, map) -> map.forEach((key, value) -> {
+			values.put(key, value);
+			origin.put(key, layer);
+		}));
+
+		/* Otherwise the next store would write the values of the other layers for these keys */
+		for (String key : getDirtyKeys())
+		{
+			String value = getProperty(key);
+
+			if (value == null)
+				values.remove(key);
+			else
+				values.put(key, value);
+		}
+
+		publish(values);
+		sources = Collections.unmodifiableMap(origin);
+	}
+
+	/**
+	 * Returns the {@link Layer} that the loaded value of the given property has been taken from
+	 *
+	 * @param key The properties key
+	 * @return The {@link Layer} or <code>null</code> if no {@link Layer} defines the property
+	 */
+	public Layer getSource(String key)
+	{
+		return sources.get(key);
+	}
+
+	/**
+	 * Returns the site-wide properties {@link File}
+	 *
+	 * @return The site-wide properties {@link File} or <code>null</code>
+	 */
+	public File getSiteFile()
+	{
+		return siteFile;
+	}
+
+	/**
+	 * Returns the properties {@link File} of the user, which is where {@link #store()} should write to using {@link #storeChanges(File)}
+	 *
+	 * @return The properties {@link File} of the user or <code>null</code>
+	 */
+	public File getUserFile()
+	{
+		return userFile;
+	}
+
+	/**
+	 * Only the changed properties are stored, the values of the other {@link Layer}s don't belong into the user file
+	 */
+	@Override
+	protected boolean storesAllProperties()
+	{
+		return false;
+	}
+
+	/**
+	 * Returns the name of the environment variable that overrides the given property
+	 *
+	 * @param key The properties key
+	 * @return The name of the environment variable
+	 */
+	public String getEnvironmentName(String key)
+	{
+		String name = prefix + key;
+		StringBuilder builder = new StringBuilder(name.length());
+
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = Character.toUpperCase(name.charAt(i));
+			builder.append(c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' ? c : '_');
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Reads the given {@link File} into the given {@link Layer} unless its size and modification date are the same as last time
+	 *
+	 * @return <code>true</code> if the {@link Layer} has changed
+	 */
+	private boolean refresh(Layer layer, File file) throws IOException
+	{
+		if (file == null)
+			return false;
+
+		List<Long> stamp = file.exists() ? Arrays.asList(file.lastModified(), file.length()) : Collections.emptyList();
+
+		if (stamp.equals(stamps.get(layer)) && layers.containsKey(layer))
+			return false;
+
+		Map<String, String> values;
+
+		if (stamp.isEmpty())
+		{
+			values = Collections.emptyMap();
+		}
+		else
+		{
+			try (InputStream stream = new FileInputStream(file))
+			{
+				values = read(stream);
+			}
+		}
+
+		stamps.put(layer, stamp);
+		return update(layer, values);
+	}
+
+	private boolean update(Layer layer, Map<String, String> values)
+	{
+		return !values.equals(layers.put(layer, values));
+	}
+
+	private static Map<String, String> read(InputStream stream) throws IOException
+	{
+		Map<String, String> result = new HashMap<>();
+
+		if (stream != null)
+		{
+			Properties loaded = new Properties();
+			loaded.load(stream);
+
+			for (String key : loaded.stringPropertyNames())
+				result.put(key, loaded.getProperty(key));
+		}
+
+		return result;
+	}
+
+	/**
+	 * The {@link Layer}s of a {@link LayeredPropertyReader} in the order of precedence. Later {@link Layer}s override earlier ones.
+	 */
+	public enum Layer
+	{
+		DEFAULTS,
+		SITE,
+		USER,
+		SYSTEM,
+		ENVIRONMENT
+	}
+}
@@ -0,0 +1,437 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * {@link LazyProperties} is an immutable {@link Map} of properties that are parsed from UTF-8 encoded bytes in the .properties format. It's meant for
+ * very large files that are read through a (memory-mapped) {@link ByteBuffer}.
+ * <p>
+ * Comments, whitespace and line breaks are skipped on the byte level without creating {@link String}s. Only the keys are decoded while parsing,
+ * the raw bytes of the values are kept and each value is decoded (and unescaped) on first access. The <code>&#92;uxxxx</code> escapes of the values
+ * are checked while parsing, so malformed ones cause an {@link IllegalArgumentException} in {@link #parse(ByteBuffer)} like in {@link
+ * Properties#load(Reader)} and reading a value never fails.
+ *
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public final class LazyProperties extends AbstractMap<String, String>
+{
+	private static final byte ESCAPED   = 1;
+	private static final byte NON_ASCII = 2;
+
+	private final Map<String, Integer> indices;
+	private final byte[]               data;
+	private final int[]                starts;
+	private final int[]                ends;
+	private final byte[]               flags;
+	private final String[]             values;
+
+	private Set<Entry<String, String>> entries;
+
+	private LazyProperties(Map<String, Integer> indices, int size, byte[] data, int[] starts, int[] ends, byte[] flags)
+	{
+		this.indices = indices;
+		this.data = data;
+		this.starts = starts;
+		this.ends = ends;
+		this.flags = flags;
+		this.values = new String[size];
+	}
+
+	/**
+	 * Parses the remaining bytes of the given {@link ByteBuffer}. The raw values are copied, so the {@link ByteBuffer} isn't referenced afterwards.
+	 *
+	 * @param buffer The {@link ByteBuffer} containing the UTF-8 encoded properties
+	 * @return The parsed {@link LazyProperties}
+	 * @throws IllegalArgumentException Thrown if the properties contain a malformed <code>&#92;uxxxx</code> escape
+	 */
+	public static LazyProperties parse(ByteBuffer buffer)
+	{
+		ByteBuffer view = buffer.duplicate();
+		int i = buffer.position();
+		int end = buffer.limit();
+
+		/* Skip the byte order mark */
+		if (end - i >= 3 && buffer.get(i) == (byte) 0xEF && buffer.get(i + 1) == (byte) 0xBB && buffer.get(i + 2) == (byte) 0xBF)
+			i += 3;
+
+		Map<String, Integer> indices = new HashMap<>();
+		byte[] data = new byte[end - i];
+		int[] starts = new int[64];
+		int[] ends = new int[64];
+		byte[] flags = new byte[64];
+		byte[] scratch = new byte[64];
+		int size = 0;
+		int length = 0;
+
+		while (i < end)
+		{
+			byte b = buffer.get(i);
+
+			if (isWhitespace(b) || b == '\r' || b == '\n')
+			{
+				i++;
+				continue;
+			}
+
+			if (b == '\\' && isLineBreak(buffer, i + 1, end))
+			{
+				/* A line that starts with a continuation can't be a comment, but it's skipped if it's empty */
+				i = skipWhitespace(buffer, i, end);
+
+				if (i == end || isLineBreak(buffer, i, end))
+					continue;
+			}
+			else if (b == '#' || b == '!')
+			{
+				while (i < end && (b = buffer.get(i)) != '\r' && b != '\n')
+					i++;
+				continue;
+			}
+
+			/* The key ends at the first unescaped separator, whitespace or line break */
+			int keyStart = i;
+			byte keyFlags = 0;
+
+			while (i < end)
+			{
+				b = buffer.get(i);
+
+				if (b == '\\')
+				{
+					keyFlags |= ESCAPED;
+					i = skipEscape(buffer, i, end);
+					continue;
+				}
+
+				if (b == '=' || b == ':' || isWhitespace(b) || b == '\r' || b == '\n')
+					break;
+
+				if (b < 0)
+					keyFlags |= NON_ASCII;
+
+				i++;
+			}
+
+			int keyEnd = i = Math.min(i, end);
+
+			if (scratch.length < keyEnd - keyStart)
+				scratch = new byte[keyEnd - keyStart];
+
+			view.limit(keyEnd).position(keyStart);
+			view.get(scratch, 0, keyEnd - keyStart);
+			String key = decode(scratch, 0, keyEnd - keyStart, keyFlags);
+
+			/* Skip the separator and the whitespace around it */
+			i = skipWhitespace(buffer, i, end);
+			if (i < end && (buffer.get(i) == '=' || buffer.get(i) == ':'))
+				i = skipWhitespace(buffer, i + 1, end);
+
+			/* The value ends at the first line break that doesn't follow a backslash */
+			int valueStart = i;
+			byte valueFlags = 0;
+
+			while (i < end)
+			{
+				b = buffer.get(i);
+
+				if (b == '\\')
+				{
+					valueFlags |= ESCAPED;
+					i = skipEscape(buffer, i, end);
+					continue;
+				}
+
+				if (b == '\r' || b == '\n')
+					break;
+
+				if (b < 0)
+					valueFlags |= NON_ASCII;
+
+				i++;
+			}
+
+			int valueEnd = i = Math.min(i, end);
+
+			if ((valueFlags & ESCAPED) != 0)
+				checkEscapes(buffer, valueStart, valueEnd);
+
+			if (size == starts.length)
+			{
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				flags = Arrays.copyOf(flags, size * 2);
+			}
+
+			view.limit(valueEnd).position(valueStart);
+			view.get(data, length, valueEnd - valueStart);
+
+			starts[size] = length;
+			length += valueEnd - valueStart;
+			ends[size] = length;
+			flags[size] = valueFlags;
+
+			/* Later entries replace earlier ones like in Properties */
+			indices.put(key, size++);
+		}
+
+		return new LazyProperties(indices, size, data.length > length * 2 ? Arrays.copyOf(data, length) : data, starts, ends, flags);
+	}
+
+	@Override
+	public String get(Object key)
+	{
+		Integer index = indices.get(key);
+
+		return index == null ? null : getValue(index);
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return indices.containsKey(key);
+	}
+
+	@Override
+	public int size()
+	{
+		return indices.size();
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet()
+	{
+		if (entries == null)
+		{
+			entries = new AbstractSet<Entry<String, String>>()
+			{
+				@Override
+				public Iterator<Entry<String, String>> iterator()
+				{
+					Iterator<Entry<String, Integer>> iterator = indices.entrySet().iterator();
+
+					return new Iterator<Entry<String, String>>()
+					{
+						@Override
+						public boolean hasNext()
+						{
+							return iterator.hasNext();
+						}
+
+						@Override
+						public Entry<String, String> next()
+						{
+							Entry<String, Integer> entry = iterator.next();
+							return new SimpleImmutableEntry<>(entry.getKey(), getValue(entry.getValue()));
+						}
+					};
+				}
+
+				@Override
+				public int size()
+				{
+					return indices.size();
+				}
+			};
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Decodes the value on first access. Racing threads may both decode it, but they'll store equal {@link String}s.
+	 */
+	private String getValue(int index)
+	{
+		String value = values[index];
+
+		if (value == null)
+			values[index] = value = decode(data, starts[index], ends[index] - starts[index], flags[index]);
+
+		return value;
+	}
+
+	private static boolean isWhitespace(byte b)
+	{
+		return b == ' ' || b == '\t' || b == '\f';
+	}
+
+	private static boolean isLineBreak(ByteBuffer buffer, int i, int end)
+	{
+		return i < end && (buffer.get(i) == '\r' || buffer.get(i) == '\n');
+	}
+
+	/**
+	 * Skips whitespace and line continuations within a line
+	 */
+	private static int skipWhitespace(ByteBuffer buffer, int i, int end)
+	{
+		while (i < end)
+		{
+			byte b = buffer.get(i);
+
+			if (isWhitespace(b))
+				i++;
+			else if (b == '\\' && isLineBreak(buffer, i + 1, end))
+				i = skipEscape(buffer, i, end);
+			else
+				break;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Skips the escape sequence at the given position. A backslash at the end of a line continues the line, so the line break and the leading
+	 * whitespace of the next line are skipped as well.
+	 */
+	private static int skipEscape(ByteBuffer buffer, int i, int end)
+	{
+		i++;
+
+		if (isLineBreak(buffer, i, end))
+		{
+			if (buffer.get(i) == '\r' && i + 1 < end && buffer.get(i + 1) == '\n')
+				i++;
+
+			i++;
+
+			while (i < end && isWhitespace(buffer.get(i)))
+				i++;
+
+			return i;
+		}
+
+		return i + 1;
+	}
+
+	/**
+	 * Checks the <code>&#92;uxxxx</code> escapes of a raw value, so that decoding it on first access can't fail
+	 */
+	private static void checkEscapes(ByteBuffer buffer, int i, int end)
+	{
+		while (i < end)
+		{
+			if (buffer.get(i) != '\\')
+			{
+				i++;
+				continue;
+			}
+
+			if (i + 1 < end && buffer.get(i + 1) == 'u')
+			{
+				for (int j = i + 2; j < i + 6; j++)
+				{
+					if (j >= end || Character.digit((int) buffer.get(j), 16) < 0)
+						throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+				}
+
+				i += 6;
+			}
+			else
+			{
+				i += 2;
+			}
+		}
+	}
+
+	private static String decode(byte[] bytes, int offset, int length, byte flags)
+	{
+		if ((flags & NON_ASCII) == 0 && (flags & ESCAPED) == 0)
+			return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+
+		String text = new String(bytes, offset, length, StandardCharsets.UTF_8);
+
+		return (flags & ESCAPED) == 0 ? text : unescape(text);
+	}
+
+	/**
+	 * Resolves escape sequences and line continuations like {@link Properties#load(Reader)}
+	 */
+	private static String unescape(String text)
+	{
+		StringBuilder builder = new StringBuilder(text.length());
+		int length = text.length();
+
+		for (int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+
+			if (c != '\\')
+			{
+				builder.append(c);
+				continue;
+			}
+
+			if (++i == length)
+				break;
+
+			c = text.charAt(i);
+
+			switch (c)
+			{
+				case 't':
+					builder.append('\t');
+					break;
+				case 'n':
+					builder.append('\n');
+					break;
+				case 'r':
+					builder.append('\r');
+					break;
+				case 'f':
+					builder.append('\f');
+					break;
+				case 'u':
+					if (i + 4 >= length)
+						throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+
+					int value = 0;
+					for (int j = 1; j <= 4; j++)
+					{
+						int digit = Character.digit(text.charAt(i + j), 16);
+
+						if (digit < 0)
+							throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+
+						value = (value << 4) | digit;
+					}
+
+					builder.append((char) value);
+					i += 4;
+					break;
+				case '\r':
+				case '\n':
+					if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n')
+						i++;
+
+					while (i + 1 < length && (text.charAt(i + 1) == ' ' || text.charAt(i + 1) == '\t' || text.charAt(i + 1) == '\f'))
+						i++;
+					break;
+				default:
+					builder.append(c);
+			}
+		}
+
+		return builder.toString();
+	}
+}
@@ -25,4 +25,14 @@ package jhi.swtcommons.util;
 public interface Parameter
 {
 	Class<?> getType();
+
+	/**
+	 * Returns the name used to identify this {@link Parameter} outside of the running application, e.g. in files
+	 *
+	 * @return The name of this {@link Parameter}. Defaults to {@link Enum#name()} for enum constants and {@link #toString()} otherwise.
+	 */
+	default String getName()
+	{
+		return this instanceof Enum ? ((Enum<?>) this).name() : toString();
+	}
 }
\ No newline at end of file
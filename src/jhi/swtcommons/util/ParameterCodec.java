@@ -0,0 +1,45 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+/**
+ * A {@link ParameterCodec} converts the values of a {@link Parameter} type from and to their {@link String} representation.
+ *
+ * @param <T> The type of the values
+ * @author Sebastian Raubach
+ * @see ParameterCodecs
+ */
+public interface ParameterCodec<T>
+{
+	/**
+	 * Parses the given {@link String} representation
+	 *
+	 * @param value The {@link String} representation
+	 * @return The parsed value
+	 * @throws IllegalArgumentException Thrown if the value cannot be parsed
+	 */
+	T parse(String value);
+
+	/**
+	 * Formats the given value as a {@link String}
+	 *
+	 * @param value The value to format (never <code>null</code>)
+	 * @return The {@link String} representation of the value
+	 */
+	String format(T value);
+}
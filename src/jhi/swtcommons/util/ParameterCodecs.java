@@ -0,0 +1,153 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * {@link ParameterCodecs} is the registry of {@link ParameterCodec}s keyed by the {@link Class} they convert. Codecs for {@link Integer}, {@link
+ * Long}, {@link Double}, {@link Float}, {@link Boolean}, {@link String} and {@link List} (comma separated) are registered by default. Codecs for enums
+ * are created on demand and use {@link Enum#name()}.
+ *
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public class ParameterCodecs
+{
+	private static final Map<Class<?>, ParameterCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+	static
+	{
+		register(Integer.class, codec(Integer::parseInt));
+		register(Long.class, codec(Long::parseLong));
+		register(Double.class, codec(Double::parseDouble));
+		register(Float.class, codec(Float::parseFloat));
+		register(Boolean.class, codec(Boolean::parseBoolean));
+		register(String.class, codec(value -> value));
+		/* Not registered via register(Class, ParameterCodec), since List.class can't be typed as a Class<List<?>> */
+		CODECS.put(List.class, new ParameterCodec<List<?>>()
+		{
+			@Override
+			public List<?> parse(String value)
+			{
+				return CollectionUtils.parseList(value, ",");
+			}
+
+			@Override
+			public String format(List<?> value)
+			{
+				return CollectionUtils.joinList(value, ",");
+			}
+		});
+	}
+
+	/**
+	 * Registers the given {@link ParameterCodec} for the given {@link Class}. Replaces any previously registered {@link ParameterCodec}. {@link
+	 * ParameterStore}s cache the {@link ParameterCodec} of each {@link Parameter}, so codecs should be registered before the {@link Parameter}s
+	 * are first used.
+	 *
+	 * @param type  The {@link Class} of the values
+	 * @param codec The {@link ParameterCodec}
+	 * @param <T>   The type of the values
+	 */
+	public static <T> void register(Class<T> type, ParameterCodec<T> codec)
+	{
+		CODECS.put(type, codec);
+	}
+
+	/**
+	 * Returns the {@link ParameterCodec} for the given {@link Class}
+	 *
+	 * @param type The {@link Class} of the values
+	 * @param <T>  The type of the values
+	 * @return The {@link ParameterCodec} or <code>null</code> if there is none for the given {@link Class}
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ParameterCodec<T> get(Class<T> type)
+	{
+		ParameterCodec<T> codec = (ParameterCodec<T>) CODECS.get(type);
+
+		if (codec == null && type.isEnum())
+			codec = (ParameterCodec<T>) CODECS.computeIfAbsent(type, ParameterCodecs::enumCodec);
+
+		return codec;
+	}
+
+	/**
+	 * Formats the given value of the given {@link Parameter} using the {@link ParameterCodec} of {@link Parameter#getType()}. Falls back to {@link
+	 * Object#toString()} if there is no suitable {@link ParameterCodec}.
+	 *
+	 * @param key   The {@link Parameter} identifier
+	 * @param value The value to format
+	 * @return The {@link String} representation of the value or <code>null</code> if the value is <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public static String format(Parameter key, Object value)
+	{
+		if (value == null)
+			return null;
+
+		ParameterCodec<Object> codec = (ParameterCodec<Object>) get(key.getType());
+
+		if (codec != null && key.getType().isInstance(value))
+			return codec.format(value);
+		else
+			return value.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E extends Enum<E>> ParameterCodec<E> enumCodec(Class<?> type)
+	{
+		Class<E> enumType = (Class<E>) type;
+
+		return new ParameterCodec<E>()
+		{
+			@Override
+			public E parse(String value)
+			{
+				return Enum.valueOf(enumType, value);
+			}
+
+			@Override
+			public String format(E value)
+			{
+				return value.name();
+			}
+		};
+	}
+
+	private static <T> ParameterCodec<T> codec(Function<String, T> parser)
+	{
+		return new ParameterCodec<T>()
+		{
+			@Override
+			public T parse(String value)
+			{
+				return parser.apply(value);
+			}
+
+			@Override
+			public String format(T value)
+			{
+				return value.toString();
+			}
+		};
+	}
+}
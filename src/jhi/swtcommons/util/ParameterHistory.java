@@ -0,0 +1,200 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+/**
+ * {@link ParameterHistory} records the changes of a {@link ParameterStore} in a bounded ring buffer and allows to undo and redo them. Only the
+ * changed {@link Parameter}s and their previous and new values are kept, so the memory used is proportional to the number of edits rather than
+ * to the size of the {@link ParameterStore}. Once the capacity is reached, the oldest changes are dropped.
+ * <p>
+ * A typical preferences dialog calls {@link #mark()} when it opens and {@link #rollbackTo(long)} if it is cancelled.
+ *
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public class ParameterHistory implements ParameterStore.WriteListener
+{
+	private final ParameterStore store;
+	private final Parameter[]    keys;
+	private final Object[]       previousValues;
+	private final Object[]       newValues;
+
+	/** The absolute position of the oldest change that is still in the buffer */
+	private long    first    = 0;
+	/** The absolute position after the last change that has been applied */
+	private long    position = 0;
+	/** The absolute position after the last change that can be redone */
+	private long    last     = 0;
+	private boolean replaying = false;
+
+	/**
+	 * Creates a new {@link ParameterHistory} and starts recording the changes of the given {@link ParameterStore}
+	 *
+	 * @param store    The {@link ParameterStore} to record
+	 * @param capacity The maximal number of changes to keep
+	 */
+	public ParameterHistory(ParameterStore store, int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity has to be positive");
+
+		this.store = store;
+		this.keys = new Parameter[capacity];
+		this.previousValues = new Object[capacity];
+		this.newValues = new Object[capacity];
+
+		store.addWriteListener(this);
+	}
+
+	@Override
+	public synchronized void onWrite(ParameterStore store, Parameter key, Object previous, Object value)
+	{
+		/* Ignore the changes we're making ourselves */
+		if (replaying)
+			return;
+
+		int index = index(position);
+		keys[index] = key;
+		previousValues[index] = previous;
+		newValues[index] = value;
+
+		position++;
+		last = position;
+
+		if (position - first > keys.length)
+			first = position - keys.length;
+	}
+
+	/**
+	 * Reverts the last change
+	 *
+	 * @return <code>false</code> if there is nothing to undo
+	 */
+	public synchronized boolean undo()
+	{
+		if (position == first)
+			return false;
+
+		position--;
+		apply(index(position), previousValues);
+		return true;
+	}
+
+	/**
+	 * Re-applies the last change that has been reverted by {@link #undo()}
+	 *
+	 * @return <code>false</code> if there is nothing to redo
+	 */
+	public synchronized boolean redo()
+	{
+		if (position == last)
+			return false;
+
+		apply(index(position), newValues);
+		position++;
+		return true;
+	}
+
+	/**
+	 * Returns a mark for the current state that can be passed to {@link #rollbackTo(long)}
+	 *
+	 * @return A mark for the current state
+	 */
+	public synchronized long mark()
+	{
+		return position;
+	}
+
+	/**
+	 * Reverts all changes made after the given mark
+	 *
+	 * @param mark The mark as returned by {@link #mark()}
+	 * @return <code>false</code> if the mark is no longer within the history, because too many changes have been made since. In this case, as many
+	 * changes as possible are reverted.
+	 */
+	public synchronized boolean rollbackTo(long mark)
+	{
+		while (position > mark && position > first)
+			undo();
+
+		return position <= mark;
+	}
+
+	/**
+	 * Checks whether there is a change that can be reverted
+	 *
+	 * @return <code>true</code> if there is a change that can be reverted
+	 */
+	public synchronized boolean canUndo()
+	{
+		return position > first;
+	}
+
+	/**
+	 * Checks whether there is a reverted change that can be re-applied
+	 *
+	 * @return <code>true</code> if there is a reverted change that can be re-applied
+	 */
+	public synchronized boolean canRedo()
+	{
+		return position < last;
+	}
+
+	/**
+	 * Forgets all recorded changes
+	 */
+	public synchronized void clear()
+	{
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = null;
+			previousValues[i] = null;
+			newValues[i] = null;
+		}
+
+		first = position;
+		last = position;
+	}
+
+	/**
+	 * Stops recording the changes of the {@link ParameterStore}
+	 */
+	public void dispose()
+	{
+		store.removeWriteListener(this);
+		clear();
+	}
+
+	private void apply(int index, Object[] values)
+	{
+		replaying = true;
+		try
+		{
+			store.put(keys[index], values[index]);
+		}
+		finally
+		{
+			replaying = false;
+		}
+	}
+
+	private int index(long position)
+	{
+		return (int) (position % keys.length);
+	}
+}
@@ -0,0 +1,444 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import javax.activation.*;
+
+/**
+ * {@link ParameterJournal} is an append-only journal of the changes to a {@link ParameterStore}. Changes are queued by the writing thread and
+ * appended to the journal file by a background thread. All changes that are queued at the same time are written with a single flush to the disk
+ * (group commit). Once the journal grows beyond the compaction threshold, it is replaced by a snapshot of the whole {@link ParameterStore}.
+ * <p>
+ * Every entry ends with the CRC32 of its content and a line break. On {@link #replay(ParameterStore)}, a last line without a line break (a write
+ * that has been cut off by a crash) is dropped and replaying stops at the first entry whose checksum doesn't match.
+ * <p>
+ * Usage: Call {@link #replay(ParameterStore)} on startup to restore the state, then {@link #attach(ParameterStore)} to start journaling and
+ * {@link #close()} on shutdown.
+ *
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public class ParameterJournal implements ParameterStore.WriteListener
+{
+	private static final String GENERATION = "G";
+	private static final String PUT        = "P";
+	private static final String REMOVE     = "R";
+
+	private static final Entry STOP = new Entry(null, null);
+
+	private final File                   journalFile;
+	private final File                   snapshotFile;
+	private final Map<String, Parameter> parameters = new HashMap<>();
+	private final int                    compactionThreshold;
+
+	private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+	private ParameterStore   store;
+	private Thread           writerThread;
+	private FileOutputStream journalStream;
+	private Writer           journalWriter;
+	private long             generation = 0;
+	private int              entries    = 0;
+
+	/**
+	 * Creates a new {@link ParameterJournal}
+	 *
+	 * @param file                The journal {@link File}. The snapshot is kept next to it with the additional extension <code>.snapshot</code>
+	 * @param compactionThreshold The number of journal entries after which the journal is compacted into a snapshot
+	 * @param parameters          All {@link Parameter}s that may appear in the journal
+	 */
+	public ParameterJournal(File file, int compactionThreshold, Parameter... parameters)
+	{
+		this.journalFile = file;
+		this.snapshotFile = new File(file.getPath() + ".snapshot");
+		this.compactionThreshold = compactionThreshold;
+
+		for (Parameter parameter : parameters)
+			this.parameters.put(parameter.getName(), parameter);
+	}
+
+	/**
+	 * Creates a new {@link ParameterJournal} that is compacted every 1000 entries
+	 *
+	 * @param file       The journal {@link File}. The snapshot is kept next to it with the additional extension <code>.snapshot</code>
+	 * @param parameters All {@link Parameter}s that may appear in the journal
+	 */
+	public ParameterJournal(File file, Parameter... parameters)
+	{
+		this(file, 1000, parameters);
+	}
+
+	/**
+	 * Restores the state of the given {@link ParameterStore} from the snapshot and the journal. Has to be called before {@link
+	 * #attach(ParameterStore)}. Entries of unknown {@link Parameter}s are skipped, a cut off last entry (e.g. after a crash) is dropped and
+	 * replaying stops at the first corrupted entry.
+	 *
+	 * @param store The {@link ParameterStore} to restore
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	public synchronized void replay(ParameterStore store) throws IOException
+	{
+		generation = read(snapshotFile, store, -1);
+		read(journalFile, store, generation);
+	}
+
+	/**
+	 * Reads the given file and applies its entries to the given {@link ParameterStore}. If the expected generation is not negative, the entries are
+	 * only applied if the file belongs to this generation.
+	 *
+	 * @return The generation of the file
+	 */
+	private long read(File file, ParameterStore store, long expectedGeneration) throws IOException
+	{
+		if (!file.exists())
+			return 0;
+
+		String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+		/* Only complete lines count, anything after the last line break has been cut off */
+		String[] lines = content.split("\n", -1);
+		int count = lines.length - 1;
+
+		if (count < 1 || !lines[0].startsWith(GENERATION + "\t"))
+			return 0;
+
+		long fileGeneration;
+
+		try
+		{
+			fileGeneration = Long.parseLong(lines[0].substring(2));
+		}
+		catch (NumberFormatException e)
+		{
+			return 0;
+		}
+
+		if (expectedGeneration >= 0 && fileGeneration != expectedGeneration)
+			return fileGeneration;
+
+		for (int i = 1; i < count; i++)
+		{
+			String line = lines[i];
+			int separator = line.lastIndexOf('\t');
+
+			/* Everything after a corrupted entry is unreliable */
+			if (separator == -1 || !line.substring(separator + 1).equals(checksum(line.substring(0, separator))))
+				break;
+
+			String[] parts = line.substring(0, separator).split("\t", -1);
+			Parameter key = parts.length > 1 ? parameters.get(unescape(parts[1])) : null;
+
+			if (key == null)
+				continue;
+
+			try
+			{
+				if (PUT.equals(parts[0]) && parts.length == 3)
+					store.put(key, unescape(parts[2]), key.getType());
+				else if (REMOVE.equals(parts[0]))
+					store.remove(key);
+			}
+			catch (IllegalArgumentException | UnsupportedDataTypeException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		return fileGeneration;
+	}
+
+	/**
+	 * Starts journaling the changes of the given {@link ParameterStore}
+	 *
+	 * @param store The {@link ParameterStore} to journal
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	public synchronized void attach(ParameterStore store) throws IOException
+	{
+		if (this.store != null)
+			throw new IllegalStateException("Journal is already attached");
+
+		this.store = store;
+		this.generation = snapshotFile.exists() ? Math.max(0, getGeneration(snapshotFile)) : 0;
+
+		/* Continue the existing journal if it belongs to the current snapshot, start a new one otherwise */
+		if (journalFile.exists() && getGeneration(journalFile) == generation)
+			openJournal(true);
+		else
+			openJournal(false);
+
+		writerThread = new Thread(this::writeEntries, "ParameterJournal");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		store.addWriteListener(this);
+	}
+
+	/**
+	 * Stops journaling, writes all pending entries and compacts the journal
+	 *
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	public synchronized void close() throws IOException
+	{
+		if (store == null)
+			return;
+
+		store.removeWriteListener(this);
+		queue.add(STOP);
+
+		try
+		{
+			writerThread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		compact();
+		closeJournal();
+
+		store = null;
+		writerThread = null;
+	}
+
+	@Override
+	public void onWrite(ParameterStore store, Parameter key, Object previous, Object value)
+	{
+		queue.add(new Entry(key, value));
+	}
+
+	/**
+	 * The loop of the background thread. Takes all queued entries at once and writes them with a single flush.
+	 */
+	private void writeEntries()
+	{
+		List<Entry> batch = new ArrayList<>();
+
+		while (true)
+		{
+			try
+			{
+				batch.add(queue.take());
+				queue.drainTo(batch);
+
+				boolean stop = batch.remove(STOP);
+
+				append(batch);
+				batch.clear();
+
+				if (stop)
+					return;
+				else if (entries >= compactionThreshold)
+					compact();
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			catch (IOException | RuntimeException e)
+			{
+				/* Keep the thread alive, otherwise the queue grows forever */
+				e.printStackTrace();
+				batch.clear();
+			}
+		}
+	}
+
+	private void append(List<Entry> batch) throws IOException
+	{
+		if (batch.isEmpty())
+			return;
+
+		/* A failed compaction may have left the journal closed */
+		if (journalWriter == null)
+			openJournal(false);
+
+		for (Entry entry : batch)
+		{
+			if (entry.value == null)
+				journalWriter.write(record(REMOVE + "\t" + escape(entry.key.getName())));
+			else
+				journalWriter.write(record(PUT + "\t" + escape(entry.key.getName()) + "\t" + escape(ParameterCodecs.format(entry.key, entry.value))));
+		}
+
+		journalWriter.flush();
+		journalStream.getChannel().force(false);
+
+		entries += batch.size();
+	}
+
+	/**
+	 * Writes a snapshot of the {@link ParameterStore} with the next generation and starts a new journal. If the application crashes between these
+	 * two steps, the old journal is ignored on {@link #replay(ParameterStore)}, because its generation doesn't match the snapshot.
+	 */
+	private void compact() throws IOException
+	{
+		long next = generation + 1;
+		File temp = new File(snapshotFile.getPath() + ".tmp");
+
+		try (FileOutputStream stream = new FileOutputStream(temp);
+			 Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)))
+		{
+			writer.write(GENERATION + "\t" + next + "\n");
+
+			for (Map.Entry<Parameter, Object> entry : store.snapshot().asMap().entrySet())
+				writer.write(record(PUT + "\t" + escape(entry.getKey().getName()) + "\t" + escape(ParameterCodecs.format(entry.getKey(), entry.getValue()))));
+
+			writer.flush();
+			stream.getChannel().force(false);
+		}
+
+		try
+		{
+			Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		generation = next;
+
+		closeJournal();
+		openJournal(false);
+	}
+
+	private void openJournal(boolean append) throws IOException
+	{
+		journalStream = new FileOutputStream(journalFile, append);
+		journalWriter = new BufferedWriter(new OutputStreamWriter(journalStream, StandardCharsets.UTF_8));
+
+		if (!append)
+		{
+			journalWriter.write(GENERATION + "\t" + generation + "\n");
+			journalWriter.flush();
+			entries = 0;
+		}
+	}
+
+	private void closeJournal() throws IOException
+	{
+		try
+		{
+			if (journalWriter != null)
+				journalWriter.close();
+		}
+		finally
+		{
+			journalWriter = null;
+			journalStream = null;
+		}
+	}
+
+	/**
+	 * Completes the given entry with its checksum and a line break
+	 */
+	private static String record(String entry)
+	{
+		return entry + "\t" + checksum(entry) + "\n";
+	}
+
+	private static String checksum(String entry)
+	{
+		CRC32 crc = new CRC32();
+		byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+		crc.update(bytes, 0, bytes.length);
+		return Long.toHexString(crc.getValue());
+	}
+
+	private static long getGeneration(File file)
+	{
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			String line = reader.readLine();
+
+			if (line != null && line.startsWith(GENERATION + "\t"))
+				return Long.parseLong(line.substring(2));
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			e.printStackTrace();
+		}
+
+		return -1;
+	}
+
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String value)
+	{
+		if (value.indexOf('\\') == -1)
+			return value;
+
+		StringBuilder builder = new StringBuilder(value.length());
+
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+
+			if (c == '\\' && i + 1 < value.length())
+			{
+				c = value.charAt(++i);
+
+				switch (c)
+				{
+					case 't':
+						c = '\t';
+						break;
+					case 'n':
+						c = '\n';
+						break;
+					case 'r':
+						c = '\r';
+						break;
+				}
+			}
+
+			builder.append(c);
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * A single change of a {@link Parameter}. A <code>null</code> value marks a removal.
+	 */
+	private static class Entry
+	{
+		private final Parameter key;
+		private final Object    value;
+
+		private Entry(Parameter key, Object value)
+		{
+			this.key = key;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * {@link ParameterSnapshotFile} reads and writes a compact binary snapshot of a {@link ParameterStore}. Values are stored with their type, so
+ * loading doesn't have to parse them from {@link String}s. The snapshot records size and modification date of the text file it has been created
+ * from, so it can be detected as stale once the text file changes. In this case, callers should fall back to the text file.
+ * <p>
+ * Layout: <code>magic (int), format version (short), source size (long), source modification date (long), entry count (int), entries, CRC32 of
+ * everything before it (long)</code>. Each entry is <code>name (UTF-8 with int length), type (byte), value</code>.
+ * <p>
+ * Usage: In {@link PropertyReader#load()}, call {@link #load(File, ParameterStore)} first and only parse the text file if it returns
+ * <code>false</code>. Call {@link #write(File, ParameterStore)} whenever the text file has been written.
+ *
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public class ParameterSnapshotFile
+{
+	private static final int   MAGIC   = 0x4A485053;
+	private static final short VERSION = 1;
+
+	private static final int HEADER_SIZE = 26;
+
+	private static final byte TYPE_INTEGER = 1;
+	private static final byte TYPE_LONG    = 2;
+	private static final byte TYPE_FLOAT   = 3;
+	private static final byte TYPE_DOUBLE  = 4;
+	private static final byte TYPE_BOOLEAN = 5;
+	private static final byte TYPE_STRING  = 6;
+	private static final byte TYPE_CODEC   = 7;
+
+	private final File                   file;
+	private final Map<String, Parameter> parameters = new HashMap<>();
+
+	/**
+	 * Creates a new {@link ParameterSnapshotFile}
+	 *
+	 * @param file       The snapshot {@link File}
+	 * @param parameters All {@link Parameter}s that may appear in the snapshot
+	 */
+	public ParameterSnapshotFile(File file, Parameter... parameters)
+	{
+		this.file = file;
+
+		for (Parameter parameter : parameters)
+			this.parameters.put(parameter.getName(), parameter);
+	}
+
+	/**
+	 * Checks whether the snapshot exists and has been created from the current version of the given source {@link File}
+	 *
+	 * @param source The text file the snapshot has been created from
+	 * @return <code>true</code> if the snapshot can be used instead of the source {@link File}
+	 */
+	public boolean isUpToDate(File source)
+	{
+		if (!file.exists() || file.length() < HEADER_SIZE + 8)
+			return false;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) != -1)
+			{
+				/* Keep reading */
+			}
+			header.flip();
+
+			return isUpToDate(header, source);
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	private static boolean isUpToDate(ByteBuffer header, File source)
+	{
+		return header.remaining() >= HEADER_SIZE && header.getInt(0) == MAGIC && header.getShort(4) == VERSION && header.getLong(6) == source.length() && header.getLong(14) == source.lastModified();
+	}
+
+	/**
+	 * Loads the snapshot into the given {@link ParameterStore} if it is up to date with the given source {@link File}. The file is read with a single
+	 * {@link FileChannel} read and is verified with its checksum before any value is put into the {@link ParameterStore}.
+	 *
+	 * @param source The text file the snapshot has been created from
+	 * @param store  The {@link ParameterStore} to fill
+	 * @return <code>true</code> if the snapshot has been loaded, <code>false</code> if it is missing, stale or corrupt and the source {@link File}
+	 * has to be used instead
+	 */
+	public boolean load(File source, ParameterStore store)
+	{
+		if (!file.exists() || !source.exists())
+			return false;
+
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) != -1)
+			{
+				/* Keep reading */
+			}
+			buffer.flip();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+
+		if (buffer.remaining() < HEADER_SIZE + 8 || !isUpToDate(buffer, source))
+			return false;
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.limit() - 8);
+		if (crc.getValue() != buffer.getLong(buffer.limit() - 8))
+			return false;
+
+		buffer.position(HEADER_SIZE - 4);
+		int count = buffer.getInt();
+
+		Map<Parameter, Object> values = new LinkedHashMap<>();
+		try
+		{
+			for (int i = 0; i < count; i++)
+			{
+				String name = readString(buffer);
+				byte type = buffer.get();
+				Object value = readValue(buffer, type);
+				Parameter key = parameters.get(name);
+
+				if (key == null)
+					continue;
+
+				if (type == TYPE_CODEC)
+				{
+					ParameterCodec<?> codec = ParameterCodecs.get(key.getType());
+
+					if (codec == null)
+						continue;
+
+					value = codec.parse((String) value);
+				}
+
+				values.put(key, value);
+			}
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+
+		store.transaction(editor -> values.forEach(editor::put));
+
+		return true;
+	}
+
+	/**
+	 * Writes a snapshot of the given {@link ParameterStore}. The snapshot is written to a temporary file first and then moved into place.
+	 *
+	 * @param source The text file that holds the same state as the {@link ParameterStore}. Its size and modification date are recorded in the
+	 *               snapshot.
+	 * @param store  The {@link ParameterStore} to write
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	public void write(File source, ParameterStore store) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		Map<Parameter, Object> values = store.snapshot().asMap();
+
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeLong(source.length());
+		out.writeLong(source.lastModified());
+		out.writeInt(values.size());
+
+		for (Map.Entry<Parameter, Object> entry : values.entrySet())
+		{
+			writeString(out, entry.getKey().getName());
+			writeValue(out, entry.getKey(), entry.getValue());
+		}
+
+		out.flush();
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeLong(crc.getValue());
+		out.flush();
+
+		File temp = new File(file.getPath() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+
+		try
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Parameter key, Object value) throws IOException
+	{
+		if (value instanceof Integer)
+		{
+			out.writeByte(TYPE_INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long)
+		{
+			out.writeByte(TYPE_LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Float)
+		{
+			out.writeByte(TYPE_FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Double)
+		{
+			out.writeByte(TYPE_DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof Boolean)
+		{
+			out.writeByte(TYPE_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof String)
+		{
+			out.writeByte(TYPE_STRING);
+			writeString(out, (String) value);
+		}
+		else
+		{
+			out.writeByte(TYPE_CODEC);
+			writeString(out, ParameterCodecs.format(key, value));
+		}
+	}
+
+	private static Object readValue(ByteBuffer buffer, byte type)
+	{
+		switch (type)
+		{
+			case TYPE_INTEGER:
+				return buffer.getInt();
+			case TYPE_LONG:
+				return buffer.getLong();
+			case TYPE_FLOAT:
+				return buffer.getFloat();
+			case TYPE_DOUBLE:
+				return buffer.getDouble();
+			case TYPE_BOOLEAN:
+				return buffer.get() != 0;
+			case TYPE_STRING:
+			case TYPE_CODEC:
+				return readString(buffer);
+			default:
+				throw new IllegalArgumentException("Unknown value type: " + type);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer)
+	{
+		int length = buffer.getInt();
+
+		if (length < 0 || length > buffer.remaining())
+			throw new IllegalArgumentException("Invalid string length: " + length);
+
+		String result = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return result;
+	}
+}
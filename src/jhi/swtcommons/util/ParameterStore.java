@@ -17,13 +17,25 @@
 
 package jhi.swtcommons.util;
 
+import org.eclipse.swt.*;
+import org.eclipse.swt.widgets.*;
+
 import java.util.*;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 
 import javax.activation.*;
 
 /**
- * {@link ParameterStore} is the central instance holding the {@link Parameter}s of the current state.
+ * {@link ParameterStore} is the central instance holding the {@link Parameter}s of the current state. <p> Changes can be observed by adding a {@link
+ * ChangeListener}. Changes are collected and delivered in batches on the thread of a {@link Display}, so a burst of {@link #put(Parameter, Object)}
+ * calls only results in a single notification. The {@link Display} is the one given to {@link #setDisplay(Display)} or else the one that was
+ * current when a {@link ChangeListener} has been added or a change has been made. As long as there is none, the {@link ChangeListener}s are
+ * notified synchronously on the writing thread after every change (or once per {@link #transaction(Consumer)}). <p>
+ * Readers that need a consistent view of several related {@link Parameter}s should use {@link #snapshot()}. Writers that change several related
+ * {@link Parameter}s should use {@link #transaction(Consumer)}, which publishes all changes at once.
  *
  * @author Sebastian Raubach
  */
@@ -32,6 +44,37 @@ public abstract class ParameterStore
 {
 	protected final Map<Parameter, Object> STATE_PARAMETERS = new ConcurrentHashMap<>();
 
+	private final List<ChangeListener>                  storeListeners     = new CopyOnWriteArrayList<>();
+	private final Map<Parameter, List<ChangeListener>> parameterListeners = new ConcurrentHashMap<>();
+	private final Set<Parameter>                        pendingChanges     = new LinkedHashSet<>();
+	private final AtomicBoolean                         flushScheduled     = new AtomicBoolean(false);
+	private final AtomicInteger                         batchDepth         = new AtomicInteger(0);
+	private volatile boolean hasListeners = false;
+	private volatile Display display;
+
+	private final List<WriteListener> writeListeners = new CopyOnWriteArrayList<>();
+
+	private final Map<Parameter, ParameterCodec<?>> codecs    = new ConcurrentHashMap<>();
+	private final Map<Parameter, Computed>          computed   = new ConcurrentHashMap<>();
+	private final Map<Parameter, Set<Parameter>>    dependents = new ConcurrentHashMap<>();
+	private volatile boolean hasComputed = false;
+
+	private final Set<Parameter> dirty = ConcurrentHashMap.newKeySet();
+	private final Map<Parameter, FormattedValue>    formatted = new ConcurrentHashMap<>();
+
+	private final List<Runnable> restartHooks  = new CopyOnWriteArrayList<>();
+	private final List<Runnable> shutdownHooks = new CopyOnWriteArrayList<>();
+	private volatile boolean clearOnRestart = true;
+
+	/** The number of times {@link #snapshot()} copies the values without locking before it waits for running transactions */
+	private static final int SNAPSHOT_ATTEMPTS = 3;
+
+	private final Object     transactionLock = new Object();
+	private final AtomicLong version         = new AtomicLong(0);
+	/** Odd while a {@link #transaction(Consumer)} is applying its changes */
+	private final AtomicLong transactions    = new AtomicLong(0);
+	private volatile Snapshot snapshot;
+
 	/**
 	 * Get a specific {@link Parameter} from the {@link ParameterStore}
 	 *
@@ -40,26 +83,44 @@ public abstract class ParameterStore
 	 */
 	public Object get(Parameter key)
 	{
-		return STATE_PARAMETERS.get(key);
+		Computed derived = getComputed(key);
+
+		if (derived != null)
+			return derived.get();
+		else
+			return getValue(key);
 	}
 
 	/**
 	 * Gets a specific {@link Parameter} from the {@link ParameterStore}. Makes sure that it is in {@link String} form. This will, e.g., convert a
-	 * {@link List} to a csv String.
+	 * {@link List} to a csv String. The {@link String} form is cached until the {@link Parameter} changes.
 	 *
 	 * @param key The {@link Parameter} identifier
 	 * @return The {@link Parameter} or <code>null</code>
 	 */
+	@SuppressWarnings("unchecked")
 	public String getAsString(Parameter key)
 	{
-		if (get(key) == null)
+		Object value = get(key);
+
+		if (value == null)
 			return null;
-		else if (key.getType().equals(List.class))
-			return CollectionUtils.joinList((List<?>) get(key), ",");
-		else if (key.getType().equals(Install4jUtils.UpdateInterval.class))
-			return ((Install4jUtils.UpdateInterval) get(key)).name();
+
+		FormattedValue cached = formatted.get(key);
+		if (cached != null && cached.isFormOf(value))
+			return cached.string;
+
+		ParameterCodec<Object> codec = (ParameterCodec<Object>) getCodec(key);
+
+		String result;
+		if (codec != null && key.getType().isInstance(value))
+			result = codec.format(value);
 		else
-			return get(key).toString();
+			result = value.toString();
+
+		formatted.put(key, new FormattedValue(value, result));
+
+		return result;
 	}
 
 	/**
@@ -72,10 +133,9 @@ public abstract class ParameterStore
 	 */
 	public String getAsString(Parameter key, String fallback)
 	{
-		if (get(key) == null)
-			return fallback;
-		else
-			return getAsString(key);
+		String result = getAsString(key);
+
+		return result == null ? fallback : result;
 	}
 
 	/**
@@ -88,10 +148,16 @@ public abstract class ParameterStore
 	 */
 	public Object put(Parameter key, Object value)
 	{
+		Object previous;
 		if (value == null)
-			return STATE_PARAMETERS.remove(key);
+			previous = removeValue(key);
 		else
-			return STATE_PARAMETERS.put(key, value);
+			previous = putValue(key, value);
+
+		if (!Objects.equals(previous, value))
+			changed(key, previous, value);
+
+		return previous;
 	}
 
 	/**
@@ -102,32 +168,204 @@ public abstract class ParameterStore
 	 * @param type  The {@link Class} of this {@link Parameter}
 	 * @return the previous value associated with key, or null if there was no mapping for the key. (A null return can also indicate that the map
 	 * previously associated null with the key)
-	 * @throws UnsupportedDataTypeException Thrown if the given type is not supported
+	 * @throws UnsupportedDataTypeException Thrown if there is no {@link ParameterCodec} for the given type
+	 * @see ParameterCodecs
 	 */
 	public Object put(Parameter key, String value, Class<?> type) throws UnsupportedDataTypeException
 	{
-		if (type.equals(Integer.class))
-		{
-			return STATE_PARAMETERS.put(key, Integer.parseInt(value));
-		}
-		else if (type.equals(Double.class))
-		{
-			return STATE_PARAMETERS.put(key, Double.parseDouble(value));
-		}
-		else if (type.equals(Float.class))
-		{
-			return STATE_PARAMETERS.put(key, Float.parseFloat(value));
-		}
-		else if (type.equals(Boolean.class))
-		{
-			return STATE_PARAMETERS.put(key, Boolean.parseBoolean(value));
-		}
-		else if (type.equals(String.class))
-		{
-			return STATE_PARAMETERS.put(key, value);
-		}
+		ParameterCodec<?> codec = type.equals(key.getType()) ? getCodec(key) : ParameterCodecs.get(type);
+
+		if (codec == null)
+			throw new UnsupportedDataTypeException(type.getName());
+		else
+			return put(key, codec.parse(value));
+	}
+
+	/**
+	 * Gets a numeric {@link Parameter} from the {@link ParameterStore} as an <code>int</code>
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return The value of the {@link Parameter} or <code>0</code> if it isn't set
+	 */
+	public int getInt(Parameter key)
+	{
+		return getInt(key, 0);
+	}
+
+	/**
+	 * Gets a numeric {@link Parameter} from the {@link ParameterStore} as an <code>int</code>
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param fallback The value that is returned if the requested {@link Parameter} doesn't have a numeric value
+	 * @return The value of the {@link Parameter} or the fallback
+	 */
+	public int getInt(Parameter key, int fallback)
+	{
+		return (int) readLong(key, fallback);
+	}
+
+	/**
+	 * Gets a numeric {@link Parameter} from the {@link ParameterStore} as a <code>long</code>
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return The value of the {@link Parameter} or <code>0</code> if it isn't set
+	 */
+	public long getLong(Parameter key)
+	{
+		return getLong(key, 0L);
+	}
+
+	/**
+	 * Gets a numeric {@link Parameter} from the {@link ParameterStore} as a <code>long</code>
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param fallback The value that is returned if the requested {@link Parameter} doesn't have a numeric value
+	 * @return The value of the {@link Parameter} or the fallback
+	 */
+	public long getLong(Parameter key, long fallback)
+	{
+		return readLong(key, fallback);
+	}
+
+	/**
+	 * Gets a numeric {@link Parameter} from the {@link ParameterStore} as a <code>double</code>
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return The value of the {@link Parameter} or <code>0</code> if it isn't set
+	 */
+	public double getDouble(Parameter key)
+	{
+		return getDouble(key, 0d);
+	}
+
+	/**
+	 * Gets a numeric {@link Parameter} from the {@link ParameterStore} as a <code>double</code>
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param fallback The value that is returned if the requested {@link Parameter} doesn't have a numeric value
+	 * @return The value of the {@link Parameter} or the fallback
+	 */
+	public double getDouble(Parameter key, double fallback)
+	{
+		Computed derived = getComputed(key);
+
+		if (derived == null)
+			return getDoubleValue(key, fallback);
+
+		Object value = derived.get();
+
+		if (value instanceof Number)
+			return ((Number) value).doubleValue();
+		else if (value instanceof Boolean)
+			return (Boolean) value ? 1 : 0;
+		else
+			return fallback;
+	}
+
+	/**
+	 * Gets a {@link Boolean} {@link Parameter} from the {@link ParameterStore} as a <code>boolean</code>
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return The value of the {@link Parameter} or <code>false</code> if it isn't set
+	 */
+	public boolean getBoolean(Parameter key)
+	{
+		return getBoolean(key, false);
+	}
+
+	/**
+	 * Gets a {@link Boolean} {@link Parameter} from the {@link ParameterStore} as a <code>boolean</code>
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param fallback The value that is returned if the requested {@link Parameter} doesn't have a value
+	 * @return The value of the {@link Parameter} or the fallback
+	 */
+	public boolean getBoolean(Parameter key, boolean fallback)
+	{
+		return readLong(key, fallback ? 1 : 0) != 0;
+	}
+
+	/**
+	 * Reads the given {@link Parameter} as a <code>long</code> from either its {@link Computed} or the backing storage
+	 */
+	private long readLong(Parameter key, long fallback)
+	{
+		Computed derived = getComputed(key);
+
+		if (derived == null)
+			return getLongValue(key, fallback);
+
+		Object value = derived.get();
+
+		if (value instanceof Number)
+			return ((Number) value).longValue();
+		else if (value instanceof Boolean)
+			return (Boolean) value ? 1 : 0;
 		else
-			throw new UnsupportedDataTypeException();
+			return fallback;
+	}
+
+	/**
+	 * Sets a numeric {@link Parameter}. The value is converted to the type returned by {@link Parameter#getType()}. Nothing is reported as changed if
+	 * the converted value equals the current one.
+	 *
+	 * @param key   The {@link Parameter} identifier
+	 * @param value The actual {@link Parameter} value
+	 * @throws IllegalArgumentException Thrown if {@link Parameter#getType()} is neither numeric nor {@link Boolean}
+	 */
+	public void putInt(Parameter key, int value)
+	{
+		Object previous = getObservedValue(key);
+
+		if (putLongValue(key, value))
+			changed(key, previous, getObservedValue(key));
+	}
+
+	/**
+	 * Sets a numeric {@link Parameter}. The value is converted to the type returned by {@link Parameter#getType()}. Nothing is reported as changed if
+	 * the converted value equals the current one.
+	 *
+	 * @param key   The {@link Parameter} identifier
+	 * @param value The actual {@link Parameter} value
+	 * @throws IllegalArgumentException Thrown if {@link Parameter#getType()} is neither numeric nor {@link Boolean}
+	 */
+	public void putLong(Parameter key, long value)
+	{
+		Object previous = getObservedValue(key);
+
+		if (putLongValue(key, value))
+			changed(key, previous, getObservedValue(key));
+	}
+
+	/**
+	 * Sets a numeric {@link Parameter}. The value is converted to the type returned by {@link Parameter#getType()}. Nothing is reported as changed if
+	 * the converted value equals the current one.
+	 *
+	 * @param key   The {@link Parameter} identifier
+	 * @param value The actual {@link Parameter} value
+	 * @throws IllegalArgumentException Thrown if {@link Parameter#getType()} is neither numeric nor {@link Boolean}
+	 */
+	public void putDouble(Parameter key, double value)
+	{
+		Object previous = getObservedValue(key);
+
+		if (putDoubleValue(key, value))
+			changed(key, previous, getObservedValue(key));
+	}
+
+	/**
+	 * Sets a {@link Boolean} {@link Parameter}. Nothing is reported as changed if the value equals the current one.
+	 *
+	 * @param key   The {@link Parameter} identifier
+	 * @param value The actual {@link Parameter} value
+	 * @throws IllegalArgumentException Thrown if {@link Parameter#getType()} is neither numeric nor {@link Boolean}
+	 */
+	public void putBoolean(Parameter key, boolean value)
+	{
+		Object previous = getObservedValue(key);
+
+		if (putLongValue(key, value ? 1 : 0))
+			changed(key, previous, getObservedValue(key));
 	}
 
 	/**
@@ -138,7 +376,10 @@ public abstract class ParameterStore
 	 */
 	public boolean containsKey(Parameter key)
 	{
-		return STATE_PARAMETERS.containsKey(key);
+		if (getComputed(key) != null)
+			return get(key) != null;
+		else
+			return hasValue(key);
 	}
 
 	/**
@@ -149,7 +390,12 @@ public abstract class ParameterStore
 	 */
 	public Object remove(Parameter key)
 	{
-		return STATE_PARAMETERS.remove(key);
+		Object previous = removeValue(key);
+
+		if (previous != null)
+			changed(key, previous, null);
+
+		return previous;
 	}
 
 	/**
@@ -157,6 +403,910 @@ public abstract class ParameterStore
 	 */
 	public void clear()
 	{
-		STATE_PARAMETERS.clear();
+		Map<Parameter, Object> previous = new LinkedHashMap<>();
+		forEachValue(previous::put);
+
+		clearValues();
+
+		previous.forEach((key, value) -> changed(key, value, null));
+
+		formatted.clear();
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Checks whether any {@link Parameter} has changed since the last call to {@link #markClean()}
+	 *
+	 * @return <code>true</code> if any {@link Parameter} has changed since the last call to {@link #markClean()}
+	 */
+	public boolean isDirty()
+	{
+		return !dirty.isEmpty();
+	}
+
+	/**
+	 * Returns the {@link Parameter}s that have changed since the last call to {@link #markClean()}
+	 *
+	 * @return The {@link Parameter}s that have changed since the last call to {@link #markClean()}
+	 */
+	public Set<Parameter> getDirtyParameters()
+	{
+		return new HashSet<>(dirty);
+	}
+
+	/**
+	 * Marks all {@link Parameter}s as clean, e.g. after they have been loaded or stored
+	 */
+	public void markClean()
+	{
+		dirty.clear();
+	}
+
+	/**
+	 * Registers a computed {@link Parameter}. Its value is provided by the given {@link Supplier}, which is called lazily on the first request. The
+	 * result is cached until one of the given input {@link Parameter}s changes. Computed {@link Parameter}s can be inputs of other computed
+	 * {@link Parameter}s, but there must not be any cycles. They are not part of {@link #snapshot()} and any value put for them is hidden.
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param supplier The {@link Supplier} computing the value
+	 * @param inputs   The {@link Parameter}s the value is computed from
+	 */
+	public void registerComputed(Parameter key, Supplier<?> supplier, Parameter... inputs)
+	{
+		unregisterComputed(key);
+
+		computed.put(key, new Computed(supplier, inputs));
+		for (Parameter input : inputs)
+			dependents.computeIfAbsent(input, k -> ConcurrentHashMap.newKeySet()).add(key);
+
+		hasComputed = true;
+		invalidated(key);
+	}
+
+	/**
+	 * Removes a computed {@link Parameter} that has been registered with {@link #registerComputed(Parameter, Supplier, Parameter...)}
+	 *
+	 * @param key The {@link Parameter} identifier
+	 */
+	public void unregisterComputed(Parameter key)
+	{
+		Computed previous = computed.remove(key);
+
+		if (previous != null)
+		{
+			for (Parameter input : previous.inputs)
+			{
+				Set<Parameter> set = dependents.get(input);
+
+				if (set != null)
+					set.remove(key);
+			}
+
+			invalidated(key);
+		}
+	}
+
+	private Computed getComputed(Parameter key)
+	{
+		return hasComputed ? computed.get(key) : null;
+	}
+
+	/**
+	 * Sets whether this {@link ParameterStore} is cleared by {@link #onRestart()}. Defaults to <code>true</code>.
+	 *
+	 * @param clearOnRestart Whether this {@link ParameterStore} is cleared by {@link #onRestart()}
+	 */
+	public void setClearOnRestart(boolean clearOnRestart)
+	{
+		this.clearOnRestart = clearOnRestart;
+	}
+
+	/**
+	 * Adds a hook that is run by {@link #onRestart()}
+	 *
+	 * @param hook The hook to run
+	 */
+	public void addRestartHook(Runnable hook)
+	{
+		restartHooks.add(hook);
+	}
+
+	/**
+	 * Adds a hook that is run by {@link #onShutdown()}
+	 *
+	 * @param hook The hook to run
+	 */
+	public void addShutdownHook(Runnable hook)
+	{
+		shutdownHooks.add(hook);
+	}
+
+	/**
+	 * Called when the application restarts. Clears the {@link ParameterStore} (unless disabled via {@link #setClearOnRestart(boolean)}) and runs
+	 * the restart hooks.
+	 *
+	 * @see ParameterStores#restart()
+	 */
+	public void onRestart()
+	{
+		if (clearOnRestart)
+			clear();
+
+		restartHooks.forEach(Runnable::run);
+	}
+
+	/**
+	 * Called when the application shuts down. Runs the shutdown hooks.
+	 *
+	 * @see ParameterStores#shutdown()
+	 */
+	public void onShutdown()
+	{
+		shutdownHooks.forEach(Runnable::run);
+	}
+
+	/**
+	 * Adds a {@link ChangeListener} that is notified about changes to any {@link Parameter} of this {@link ParameterStore}
+	 *
+	 * @param listener The {@link ChangeListener} to add
+	 */
+	public void addChangeListener(ChangeListener listener)
+	{
+		storeListeners.add(listener);
+		hasListeners = true;
+		captureDisplay();
+	}
+
+	/**
+	 * Adds a {@link ChangeListener} that is notified about changes to the given {@link Parameter}
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param listener The {@link ChangeListener} to add
+	 */
+	public void addChangeListener(Parameter key, ChangeListener listener)
+	{
+		parameterListeners.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(listener);
+		hasListeners = true;
+		captureDisplay();
+	}
+
+	/**
+	 * Sets the {@link Display} on whose thread the {@link ChangeListener}s are notified in batches. Meant for stores that get their listeners and
+	 * changes on other threads before the {@link Display} is used by them.
+	 *
+	 * @param display The {@link Display} or <code>null</code> to fall back to the current {@link Display} of the next listener or change
+	 */
+	public void setDisplay(Display display)
+	{
+		this.display = display;
+	}
+
+	/**
+	 * Remembers the {@link Display} of the calling thread for notifying the {@link ChangeListener}s unless one is known already. Never creates a
+	 * {@link Display}.
+	 */
+	private Display captureDisplay()
+	{
+		Display current = display;
+
+		if (current == null || current.isDisposed())
+		{
+			current = Display.getCurrent();
+
+			if (current != null)
+				display = current;
+		}
+
+		return current;
+	}
+
+	/**
+	 * Removes the given {@link ChangeListener} from this {@link ParameterStore} and from all {@link Parameter}s
+	 *
+	 * @param listener The {@link ChangeListener} to remove
+	 */
+	public void removeChangeListener(ChangeListener listener)
+	{
+		storeListeners.remove(listener);
+		parameterListeners.values().forEach(list -> list.remove(listener));
+	}
+
+	/**
+	 * Removes the given {@link ChangeListener} from the given {@link Parameter}
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param listener The {@link ChangeListener} to remove
+	 */
+	public void removeChangeListener(Parameter key, ChangeListener listener)
+	{
+		List<ChangeListener> listeners = parameterListeners.get(key);
+
+		if (listeners != null)
+			listeners.remove(listener);
+	}
+
+	/**
+	 * Adds a {@link WriteListener} that is called synchronously after every change to this {@link ParameterStore}
+	 *
+	 * @param listener The {@link WriteListener} to add
+	 */
+	public void addWriteListener(WriteListener listener)
+	{
+		writeListeners.add(listener);
+	}
+
+	/**
+	 * Removes the given {@link WriteListener} from this {@link ParameterStore}
+	 *
+	 * @param listener The {@link WriteListener} to remove
+	 */
+	public void removeWriteListener(WriteListener listener)
+	{
+		writeListeners.remove(listener);
+	}
+
+	/**
+	 * Returns the current value of the given {@link Parameter} if it is needed by a {@link WriteListener}. This avoids boxing primitive values if no
+	 * one is interested in them.
+	 */
+	private Object getObservedValue(Parameter key)
+	{
+		return writeListeners.isEmpty() ? null : getValue(key);
+	}
+
+	/**
+	 * Called after the value of the given {@link Parameter} has changed. Calls the {@link WriteListener}s, queues the {@link Parameter} and
+	 * schedules a single {@link Display#asyncExec(Runnable)} per batch of changes to notify the {@link ChangeListener}s (see {@link
+	 * #scheduleChanges()}).
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param previous The previous value (only available if there are {@link WriteListener}s)
+	 * @param value    The new value or <code>null</code> if the {@link Parameter} has been removed (only available if there are {@link
+	 *                 WriteListener}s)
+	 */
+	protected void changed(Parameter key, Object previous, Object value)
+	{
+		formatted.remove(key);
+		version.incrementAndGet();
+		dirty.add(key);
+
+		for (WriteListener listener : writeListeners)
+			listener.onWrite(this, key, previous, value);
+
+		queueChange(key);
+		invalidateDependents(key);
+	}
+
+	/**
+	 * Called after the value of the given {@link Parameter} has become outdated without being written, i.e. if it is a computed {@link Parameter}
+	 * whose inputs have changed. Calls {@link WriteListener#onInvalidate(ParameterStore, Parameter)} and notifies the {@link ChangeListener}s.
+	 *
+	 * @param key The {@link Parameter} identifier
+	 */
+	protected void invalidated(Parameter key)
+	{
+		formatted.remove(key);
+		version.incrementAndGet();
+
+		for (WriteListener listener : writeListeners)
+			listener.onInvalidate(this, key);
+
+		queueChange(key);
+		invalidateDependents(key);
+	}
+
+	/**
+	 * Invalidates all computed {@link Parameter}s that use the given {@link Parameter} as their input
+	 */
+	private void invalidateDependents(Parameter key)
+	{
+		if (!hasComputed)
+			return;
+
+		Set<Parameter> keys = dependents.get(key);
+
+		if (keys == null)
+			return;
+
+		for (Parameter dependent : keys)
+		{
+			Computed derived = computed.get(dependent);
+
+			if (derived != null)
+			{
+				derived.invalidate();
+				invalidated(dependent);
+			}
+		}
+	}
+
+	/**
+	 * Queues the given {@link Parameter} for the next notification of the {@link ChangeListener}s
+	 */
+	private void queueChange(Parameter key)
+	{
+		if (!hasListeners)
+			return;
+
+		synchronized (pendingChanges)
+		{
+			pendingChanges.add(key);
+		}
+
+		if (batchDepth.get() == 0)
+			scheduleChanges();
+	}
+
+	/**
+	 * Schedules the notification of the {@link ChangeListener}s unless it has already been scheduled. The {@link ChangeListener}s are notified on
+	 * the thread of the {@link Display} (see {@link #captureDisplay()}). If there is no such {@link Display} or it has been disposed, they are
+	 * notified synchronously on the calling thread.
+	 */
+	private void scheduleChanges()
+	{
+		if (flushScheduled.compareAndSet(false, true))
+		{
+			Display target = captureDisplay();
+
+			if (target == null || target.isDisposed())
+			{
+				fireChanges();
+				return;
+			}
+
+			try
+			{
+				target.asyncExec(this::fireChanges);
+			}
+			catch (SWTException e)
+			{
+				/* The display has been disposed in the meantime */
+				fireChanges();
+			}
+		}
+	}
+
+	/**
+	 * Returns an immutable {@link Snapshot} of the current state of this {@link ParameterStore}. The {@link Snapshot} is cached until the next
+	 * change, so calling this repeatedly is cheap. A {@link Snapshot} never contains only parts of a {@link #transaction(Consumer)}.
+	 * <p>
+	 * The values are copied without locking and the copy is discarded if a change or a {@link #transaction(Consumer)} has happened in the
+	 * meantime. Only if that keeps happening, the copy is made while holding the lock of {@link #transaction(Consumer)}.
+	 *
+	 * @return An immutable {@link Snapshot} of the current state of this {@link ParameterStore}
+	 */
+	public Snapshot snapshot()
+	{
+		Snapshot result = snapshot;
+
+		if (result != null && result.version == version.get())
+			return result;
+
+		for (int i = 0; i < SNAPSHOT_ATTEMPTS; i++)
+		{
+			long stamp = transactions.get();
+
+			/* A transaction is being applied */
+			if ((stamp & 1) != 0)
+			{
+				Thread.yield();
+				continue;
+			}
+
+			long current = version.get();
+			Map<Parameter, Object> values = new HashMap<>();
+			forEachValue(values::put);
+
+			if (transactions.get() == stamp && version.get() == current)
+			{
+				result = new Snapshot(current, values);
+				snapshot = result;
+				return result;
+			}
+		}
+
+		synchronized (transactionLock)
+		{
+			long current = version.get();
+			Map<Parameter, Object> values = new HashMap<>();
+			forEachValue(values::put);
+
+			result = new Snapshot(current, values);
+			snapshot = result;
+			return result;
+		}
+	}
+
+	/**
+	 * Runs the given edits and publishes all of them at once. Changes made through the {@link Editor} are collected first and then applied in one
+	 * step. {@link #snapshot()} will either see all of them or none of them and {@link ChangeListener}s are notified in a single batch.
+	 *
+	 * @param edits The {@link Consumer} making the changes using the given {@link Editor}
+	 */
+	public void transaction(Consumer<Editor> edits)
+	{
+		Editor editor = new Editor();
+		edits.accept(editor);
+
+		if (editor.changes.isEmpty())
+			return;
+
+		batchDepth.incrementAndGet();
+		try
+		{
+			synchronized (transactionLock)
+			{
+				transactions.incrementAndGet();
+				try
+				{
+					editor.changes.forEach(this::put);
+				}
+				finally
+				{
+					transactions.incrementAndGet();
+				}
+			}
+		}
+		finally
+		{
+			if (batchDepth.decrementAndGet() == 0 && hasListeners)
+				scheduleChanges();
+		}
+	}
+
+	/**
+	 * Notifies the {@link ChangeListener}s about all pending changes. Every {@link ChangeListener} is called at most once per batch.
+	 */
+	private void fireChanges()
+	{
+		flushScheduled.set(false);
+
+		Set<Parameter> changes;
+		synchronized (pendingChanges)
+		{
+			if (pendingChanges.isEmpty())
+				return;
+
+			changes = Collections.unmodifiableSet(new LinkedHashSet<>(pendingChanges));
+			pendingChanges.clear();
+		}
+
+		Set<ChangeListener> listeners = new LinkedHashSet<>(storeListeners);
+		for (Parameter key : changes)
+		{
+			List<ChangeListener> list = parameterListeners.get(key);
+
+			if (list != null)
+				listeners.addAll(list);
+		}
+
+		for (ChangeListener listener : listeners)
+		{
+			try
+			{
+				listener.onChange(this, changes);
+			}
+			catch (RuntimeException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns the {@link ParameterCodec} for the type of the given {@link Parameter}. The {@link ParameterCodec} is resolved once per {@link
+	 * Parameter} and cached.
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return The {@link ParameterCodec} or <code>null</code> if there is none for {@link Parameter#getType()}
+	 * @see ParameterCodecs
+	 */
+	protected ParameterCodec<?> getCodec(Parameter key)
+	{
+		ParameterCodec<?> codec = codecs.get(key);
+
+		if (codec == null)
+		{
+			codec = ParameterCodecs.get(key.getType());
+
+			if (codec != null)
+				codecs.put(key, codec);
+		}
+
+		return codec;
+	}
+
+	/**
+	 * Reads the raw value of the given {@link Parameter} from the backing storage. Sub-classes can override the storage methods to provide a
+	 * different backing structure.
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return The stored value or <code>null</code>
+	 */
+	protected Object getValue(Parameter key)
+	{
+		return STATE_PARAMETERS.get(key);
+	}
+
+	/**
+	 * Writes the given (non-<code>null</code>) value of the given {@link Parameter} to the backing storage.
+	 *
+	 * @param key   The {@link Parameter} identifier
+	 * @param value The value to store
+	 * @return The previous value or <code>null</code>
+	 */
+	protected Object putValue(Parameter key, Object value)
+	{
+		return STATE_PARAMETERS.put(key, value);
+	}
+
+	/**
+	 * Reads the value of the given {@link Parameter} from the backing storage as a <code>long</code>. {@link Boolean}s are represented as
+	 * <code>1</code> and <code>0</code>.
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param fallback The value that is returned if there is no numeric value
+	 * @return The stored value or the fallback
+	 */
+	protected long getLongValue(Parameter key, long fallback)
+	{
+		Object value = getValue(key);
+
+		if (value instanceof Number)
+			return ((Number) value).longValue();
+		else if (value instanceof Boolean)
+			return (Boolean) value ? 1 : 0;
+		else
+			return fallback;
+	}
+
+	/**
+	 * Reads the value of the given {@link Parameter} from the backing storage as a <code>double</code>. {@link Boolean}s are represented as
+	 * <code>1</code> and <code>0</code>.
+	 *
+	 * @param key      The {@link Parameter} identifier
+	 * @param fallback The value that is returned if there is no numeric value
+	 * @return The stored value or the fallback
+	 */
+	protected double getDoubleValue(Parameter key, double fallback)
+	{
+		Object value = getValue(key);
+
+		if (value instanceof Number)
+			return ((Number) value).doubleValue();
+		else if (value instanceof Boolean)
+			return (Boolean) value ? 1 : 0;
+		else
+			return fallback;
+	}
+
+	/**
+	 * Writes the given <code>long</code> value of the given {@link Parameter} to the backing storage after converting it to {@link
+	 * Parameter#getType()}.
+	 *
+	 * @param key   The {@link Parameter} identifier
+	 * @param value The value to store
+	 * @return <code>true</code> if the stored value has changed
+	 * @throws IllegalArgumentException Thrown if {@link Parameter#getType()} is neither numeric nor {@link Boolean}
+	 */
+	protected boolean putLongValue(Parameter key, long value)
+	{
+		Class<?> type = key.getType();
+		Object converted;
+
+		if (type.equals(Integer.class))
+			converted = (int) value;
+		else if (type.equals(Long.class))
+			converted = value;
+		else if (type.equals(Double.class))
+			converted = (double) value;
+		else if (type.equals(Float.class))
+			converted = (float) value;
+		else if (type.equals(Boolean.class))
+			converted = value != 0;
+		else
+			throw new IllegalArgumentException("Not a numeric parameter: " + key.getName());
+
+		return !Objects.equals(putValue(key, converted), converted);
+	}
+
+	/**
+	 * Writes the given <code>double</code> value of the given {@link Parameter} to the backing storage after converting it to {@link
+	 * Parameter#getType()}.
+	 *
+	 * @param key   The {@link Parameter} identifier
+	 * @param value The value to store
+	 * @return <code>true</code> if the stored value has changed
+	 * @throws IllegalArgumentException Thrown if {@link Parameter#getType()} is neither numeric nor {@link Boolean}
+	 */
+	protected boolean putDoubleValue(Parameter key, double value)
+	{
+		Class<?> type = key.getType();
+		Object converted;
+
+		if (type.equals(Integer.class))
+			converted = (int) value;
+		else if (type.equals(Long.class))
+			converted = (long) value;
+		else if (type.equals(Double.class))
+			converted = value;
+		else if (type.equals(Float.class))
+			converted = (float) value;
+		else if (type.equals(Boolean.class))
+			converted = value != 0;
+		else
+			throw new IllegalArgumentException("Not a numeric parameter: " + key.getName());
+
+		return !Objects.equals(putValue(key, converted), converted);
+	}
+
+	/**
+	 * Removes the value of the given {@link Parameter} from the backing storage.
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return The previous value or <code>null</code>
+	 */
+	protected Object removeValue(Parameter key)
+	{
+		return STATE_PARAMETERS.remove(key);
+	}
+
+	/**
+	 * Checks whether the backing storage holds a value for the given {@link Parameter}.
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return <code>true</code> if there is a value for the given {@link Parameter}
+	 */
+	protected boolean hasValue(Parameter key)
+	{
+		return STATE_PARAMETERS.containsKey(key);
+	}
+
+	/**
+	 * Calls the given {@link BiConsumer} for every {@link Parameter} that has a value in the backing storage.
+	 *
+	 * @param consumer The {@link BiConsumer} to call with each {@link Parameter} and its value
+	 */
+	protected void forEachValue(BiConsumer<Parameter, Object> consumer)
+	{
+		STATE_PARAMETERS.forEach(consumer);
+	}
+
+	/**
+	 * Removes all values from the backing storage.
+	 */
+	protected void clearValues()
+	{
+		STATE_PARAMETERS.clear();
+	}
+
+	/**
+	 * {@link ChangeListener} is notified about changes to the {@link ParameterStore}. Notifications are delivered in batches on the thread of the
+	 * {@link Display} of the {@link ParameterStore}, or synchronously on the writing thread if it doesn't know any {@link Display} yet (see {@link
+	 * ParameterStore#setDisplay(Display)}).
+	 *
+	 * @author Sebastian Raubach
+	 */
+	public interface ChangeListener
+	{
+		/**
+		 * Called once per batch of changes.
+		 *
+		 * @param store      The {@link ParameterStore} that changed
+		 * @param parameters The {@link Parameter}s that changed since the last notification
+		 */
+		void onChange(ParameterStore store, Set<Parameter> parameters);
+	}
+
+	/**
+	 * {@link FormattedValue} is a cached {@link String} form of a value. It is only valid for the exact value instance it has been created from.
+	 * {@link Collection}s can be modified in place, so their hash code is checked as well.
+	 */
+	private static class FormattedValue
+	{
+		private final Object value;
+		private final int    hash;
+		private final String string;
+
+		private FormattedValue(Object value, String string)
+		{
+			this.value = value;
+			this.hash = value instanceof Collection ? value.hashCode() : 0;
+			this.string = string;
+		}
+
+		private boolean isFormOf(Object value)
+		{
+			return this.value == value && (!(value instanceof Collection) || hash == value.hashCode());
+		}
+	}
+
+	/**
+	 * {@link Computed} holds the {@link Supplier} of a computed {@link Parameter} and its cached value. The cached value is only valid for the
+	 * stamp it has been computed at, so a value that has been computed while an input changed is never reused.
+	 */
+	private static class Computed
+	{
+		private final Supplier<?> supplier;
+		private final Parameter[] inputs;
+		private final AtomicLong  stamp = new AtomicLong(0);
+		private volatile Result result;
+
+		private Computed(Supplier<?> supplier, Parameter[] inputs)
+		{
+			this.supplier = supplier;
+			this.inputs = inputs.clone();
+		}
+
+		private Object get()
+		{
+			long current = stamp.get();
+			Result cached = result;
+
+			if (cached != null && cached.stamp == current)
+				return cached.value;
+
+			Object value = supplier.get();
+			result = new Result(current, value);
+			return value;
+		}
+
+		private void invalidate()
+		{
+			stamp.incrementAndGet();
+		}
+	}
+
+	private static class Result
+	{
+		private final long   stamp;
+		private final Object value;
+
+		private Result(long stamp, Object value)
+		{
+			this.stamp = stamp;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * {@link Editor} collects the changes of a {@link ParameterStore#transaction(Consumer)}.
+	 *
+	 * @author Sebastian Raubach
+	 */
+	public static class Editor
+	{
+		private final Map<Parameter, Object> changes = new LinkedHashMap<>();
+
+		private Editor()
+		{
+		}
+
+		/**
+		 * Sets the given {@link Parameter} when the transaction is published
+		 *
+		 * @param key   The {@link Parameter} identifier
+		 * @param value The actual {@link Parameter} value or <code>null</code> to remove it
+		 * @return The {@link Editor} itself
+		 */
+		public Editor put(Parameter key, Object value)
+		{
+			changes.put(key, value);
+			return this;
+		}
+
+		/**
+		 * Removes the given {@link Parameter} when the transaction is published
+		 *
+		 * @param key The {@link Parameter} identifier
+		 * @return The {@link Editor} itself
+		 */
+		public Editor remove(Parameter key)
+		{
+			changes.put(key, null);
+			return this;
+		}
+	}
+
+	/**
+	 * {@link Snapshot} is an immutable view of a {@link ParameterStore} at a given point in time. It can be shared freely between threads.
+	 *
+	 * @author Sebastian Raubach
+	 */
+	public static class Snapshot
+	{
+		private final long                   version;
+		private final Map<Parameter, Object> values;
+
+		private Snapshot(long version, Map<Parameter, Object> values)
+		{
+			this.version = version;
+			this.values = Collections.unmodifiableMap(values);
+		}
+
+		/**
+		 * Get a specific {@link Parameter} from the {@link Snapshot}
+		 *
+		 * @param key The {@link Parameter} identifier
+		 * @return The {@link Parameter} or <code>null</code>
+		 */
+		public Object get(Parameter key)
+		{
+			return values.get(key);
+		}
+
+		/**
+		 * Get a specific {@link Parameter} from the {@link Snapshot}. The fallback will be used if there is no such {@link Parameter}.
+		 *
+		 * @param key      The {@link Parameter} identifier
+		 * @param fallback The value that is returned if the requested {@link Parameter} doesn't have a value
+		 * @return The {@link Parameter} or the fallback
+		 */
+		public Object get(Parameter key, Object fallback)
+		{
+			Object value = values.get(key);
+			return value == null ? fallback : value;
+		}
+
+		/**
+		 * Returns true if the {@link Snapshot} contains a mapping for the specified key.
+		 *
+		 * @param key The {@link Parameter} identifier
+		 * @return <code>true</code> if the {@link Snapshot} contains a mapping for the specified key.
+		 */
+		public boolean containsKey(Parameter key)
+		{
+			return values.containsKey(key);
+		}
+
+		/**
+		 * Returns an unmodifiable {@link Map} of all {@link Parameter}s in this {@link Snapshot}
+		 *
+		 * @return An unmodifiable {@link Map} of all {@link Parameter}s in this {@link Snapshot}
+		 */
+		public Map<Parameter, Object> asMap()
+		{
+			return values;
+		}
+
+		/**
+		 * Returns the version of the {@link ParameterStore} this {@link Snapshot} has been taken at. The version increases with every change.
+		 *
+		 * @return The version of the {@link ParameterStore} this {@link Snapshot} has been taken at
+		 */
+		public long getVersion()
+		{
+			return version;
+		}
+	}
+
+	/**
+	 * {@link WriteListener} is called synchronously on the writing thread after every change to the {@link ParameterStore}. Implementations have to
+	 * be fast and must not modify the {@link ParameterStore}.
+	 *
+	 * @author Sebastian Raubach
+	 */
+	public interface WriteListener
+	{
+		/**
+		 * Called after the value of the given {@link Parameter} has changed
+		 *
+		 * @param store    The {@link ParameterStore} that changed
+		 * @param key      The {@link Parameter} identifier
+		 * @param previous The previous value or <code>null</code>
+		 * @param value    The new value or <code>null</code> if the {@link Parameter} has been removed
+		 */
+		void onWrite(ParameterStore store, Parameter key, Object previous, Object value);
+
+		/**
+		 * Called after the value of a computed {@link Parameter} has become outdated, because one of its inputs has changed
+		 *
+		 * @param store The {@link ParameterStore} that changed
+		 * @param key   The {@link Parameter} identifier
+		 * @see ParameterStore#registerComputed(Parameter, Supplier, Parameter...)
+		 */
+		default void onInvalidate(ParameterStore store, Parameter key)
+		{
+		}
 	}
 }
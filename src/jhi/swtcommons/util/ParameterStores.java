@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * {@link ParameterStores} is the registry of the named {@link ParameterStore}s of the application, e.g. session, user and project stores. The
+ * default {@link ParameterStore} is {@link CommonParameterStore#getInstance()}. All lookups are lock-free.
+ *
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public class ParameterStores
+{
+	/** The name of the default {@link ParameterStore} */
+	public static final String DEFAULT = "default";
+
+	private static final ConcurrentMap<String, ParameterStore> STORES = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the default {@link ParameterStore}
+	 *
+	 * @return The default {@link ParameterStore}
+	 * @see CommonParameterStore#getInstance()
+	 */
+	public static ParameterStore getDefault()
+	{
+		return CommonParameterStore.getInstance();
+	}
+
+	/**
+	 * Returns the {@link ParameterStore} with the given name
+	 *
+	 * @param name The name of the {@link ParameterStore}
+	 * @return The {@link ParameterStore} with the given name or <code>null</code> if there is none
+	 */
+	public static ParameterStore get(String name)
+	{
+		if (DEFAULT.equals(name))
+			return getDefault();
+		else
+			return STORES.get(name);
+	}
+
+	/**
+	 * Returns the {@link ParameterStore} with the given name. Creates and registers it using the given factory if there is none.
+	 *
+	 * @param name    The name of the {@link ParameterStore}
+	 * @param factory Creates the {@link ParameterStore} if necessary
+	 * @return The {@link ParameterStore} with the given name
+	 */
+	public static ParameterStore get(String name, Supplier<? extends ParameterStore> factory)
+	{
+		if (DEFAULT.equals(name))
+			return getDefault();
+
+		ParameterStore store = STORES.get(name);
+
+		if (store == null)
+			store = STORES.computeIfAbsent(name, n -> factory.get());
+
+		return store;
+	}
+
+	/**
+	 * Registers the given {@link ParameterStore} under the given name. Replaces any previously registered {@link ParameterStore}.
+	 *
+	 * @param name  The name of the {@link ParameterStore}
+	 * @param store The {@link ParameterStore}
+	 * @return The previously registered {@link ParameterStore} or <code>null</code>
+	 */
+	public static ParameterStore register(String name, ParameterStore store)
+	{
+		if (DEFAULT.equals(name))
+			throw new IllegalArgumentException("The default store cannot be replaced");
+
+		return STORES.put(name, store);
+	}
+
+	/**
+	 * Removes the {@link ParameterStore} with the given name from the registry
+	 *
+	 * @param name The name of the {@link ParameterStore}
+	 * @return The removed {@link ParameterStore} or <code>null</code>
+	 */
+	public static ParameterStore unregister(String name)
+	{
+		return STORES.remove(name);
+	}
+
+	/**
+	 * Returns the names of all registered {@link ParameterStore}s including {@link #DEFAULT}
+	 *
+	 * @return The names of all registered {@link ParameterStore}s
+	 */
+	public static Set<String> getNames()
+	{
+		Set<String> result = new LinkedHashSet<>();
+		result.add(DEFAULT);
+		result.addAll(STORES.keySet());
+		return result;
+	}
+
+	/**
+	 * Calls {@link ParameterStore#onRestart()} on all registered {@link ParameterStore}s
+	 */
+	public static void restart()
+	{
+		getDefault().onRestart();
+		STORES.values().forEach(ParameterStore::onRestart);
+	}
+
+	/**
+	 * Calls {@link ParameterStore#onShutdown()} on all registered {@link ParameterStore}s
+	 */
+	public static void shutdown()
+	{
+		getDefault().onShutdown();
+		STORES.values().forEach(ParameterStore::onShutdown);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.util.function.*;
+
+/**
+ * A {@link PropertyKey} is a typed property of a {@link PropertyReader}. It consists of the name of the property, its default value, the {@link
+ * ParameterCodec} that converts the value and an optional validation. {@link PropertyReader#get(PropertyKey)} decodes and validates the value once
+ * and caches the result until the property changes. {@link PropertyReader#validate(PropertyKey[])} can be used to check all {@link PropertyKey}s
+ * at once after loading.
+ * <p>
+ * {@link PropertyKey}s are immutable and are meant to be kept in constants.
+ *
+ * @param <T> The type of the values
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public final class PropertyKey<T>
+{
+	private final String               name;
+	private final Class<T>             type;
+	private final T                    defaultValue;
+	private final ParameterCodec<T>    codec;
+	private final Predicate<? super T> validator;
+
+	/**
+	 * Creates a new {@link PropertyKey} that uses the {@link ParameterCodec} registered for the given {@link Class}
+	 *
+	 * @param name         The name of the property
+	 * @param type         The {@link Class} of the values
+	 * @param defaultValue The value that is used if the property isn't set or invalid
+	 * @throws IllegalArgumentException Thrown if there is no {@link ParameterCodec} for the given {@link Class}
+	 * @see ParameterCodecs#get(Class)
+	 */
+	public PropertyKey(String name, Class<T> type, T defaultValue)
+	{
+		this(name, type, defaultValue, ParameterCodecs.get(type), null);
+	}
+
+	/**
+	 * Creates a new {@link PropertyKey}
+	 *
+	 * @param name         The name of the property
+	 * @param type         The {@link Class} of the values
+	 * @param defaultValue The value that is used if the property isn't set or invalid
+	 * @param codec        The {@link ParameterCodec} that converts the values
+	 * @param validator    The {@link Predicate} that decides whether a value is valid or <code>null</code> to accept all values
+	 */
+	public PropertyKey(String name, Class<T> type, T defaultValue, ParameterCodec<T> codec, Predicate<? super T> validator)
+	{
+		if (codec == null)
+			throw new IllegalArgumentException("No codec for " + type.getName());
+
+		this.name = name;
+		this.type = type;
+		this.defaultValue = defaultValue;
+		this.codec = codec;
+		this.validator = validator;
+	}
+
+	/**
+	 * Returns a copy of this {@link PropertyKey} that only accepts values that match the given {@link Predicate}
+	 *
+	 * @param validator The {@link Predicate} that decides whether a value is valid
+	 * @return The new {@link PropertyKey}
+	 */
+	public PropertyKey<T> withValidator(Predicate<? super T> validator)
+	{
+		return new PropertyKey<>(name, type, defaultValue, codec, validator);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public Class<T> getType()
+	{
+		return type;
+	}
+
+	public T getDefault()
+	{
+		return defaultValue;
+	}
+
+	public ParameterCodec<T> getCodec()
+	{
+		return codec;
+	}
+
+	/**
+	 * Checks whether the given value is valid for this {@link PropertyKey}
+	 *
+	 * @param value The value to check
+	 * @return <code>true</code> if the value is valid
+	 */
+	public boolean isValid(T value)
+	{
+		return validator == null || validator.test(value);
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
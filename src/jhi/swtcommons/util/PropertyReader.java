@@ -17,8 +17,22 @@
 
 package jhi.swtcommons.util;
 
+import org.eclipse.swt.*;
+import org.eclipse.swt.widgets.*;
+
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.text.*;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.regex.*;
+import java.util.zip.*;
 
 /**
  * {@link PropertyReader} is a wrapper around {@link Properties} to read properties.
@@ -33,6 +47,41 @@ public abstract class PropertyReader
 
 	protected final Properties properties = new Properties();
 
+	/** The published properties if {@link #publish(Map)} has been used, <code>null</code> if {@link #properties} is used */
+	private final AtomicReference<Backing> backing = new AtomicReference<>();
+
+	private final Set<String> dirtyKeys = ConcurrentHashMap.newKeySet();
+
+	/** Marks a value that couldn't be parsed, so that it isn't parsed again */
+	private static final Object INVALID = new Object();
+
+	private static final int TYPE_INTEGER = 0;
+	private static final int TYPE_LONG    = 1;
+	private static final int TYPE_DOUBLE  = 2;
+	private static final int TYPE_FLOAT   = 3;
+	private static final int TYPE_BOOLEAN = 4;
+
+	private final Map<String, Parsed> parsed = new ConcurrentHashMap<>();
+
+	private static final Map<String, Separator> SEPARATORS = new ConcurrentHashMap<>();
+
+	/** The delay after the last change to a watched file before it's reloaded */
+	private static final long RELOAD_DELAY = 500;
+
+	private final List<ReloadListener> reloadListeners = new CopyOnWriteArrayList<>();
+	private volatile Display reloadDisplay;
+	private final Map<File, FileState> fileStates      = new ConcurrentHashMap<>();
+
+	/** The delay between the first call to {@link #storeChangesAsync(File, Charset)} and the write, to combine several stores into one */
+	private static final long STORE_DELAY = 1000;
+
+	private final Object             storeLock = new Object();
+	private final Object             writeLock = new Object();
+	private ScheduledExecutorService storeExecutor;
+	private ScheduledFuture<?>       storeFuture;
+	private PendingStore             pendingStore;
+	private Watcher watcher;
+
 	public PropertyReader(String propertiesFile)
 	{
 		this.propertiesFile = propertiesFile;
@@ -44,6 +93,10 @@ public abstract class PropertyReader
 	/**
 	 * Loads the properties {@link File}. It will try to load the local file first (in home directory). If this file doesn't exist, it will fall back
 	 * to the default within the jar (or the local file in the project during development).
+	 * <p>
+	 * Implementations have to populate their {@link ParameterStore}s from the properties on every call, even if {@link #loadFile(File, Charset)}
+	 * or {@link #loadMapped(File)} return <code>false</code>: {@link ParameterStores#restart()} clears the stores before the properties are
+	 * loaded again, while the properties themselves are kept.
 	 *
 	 * @throws IOException Thrown if the file interaction fails
 	 */
@@ -55,23 +108,40 @@ public abstract class PropertyReader
 	 * @param key       The properties key
 	 * @param separator The separator
 	 * @return The {@link List} of split {@link String}s
+	 * @see #getPropertyList(String, String)
 	 */
 	public List<String> getPropertyListAsString(String key, String separator)
 	{
-		String property = properties.getProperty(key);
+		return new ArrayList<>(getPropertyList(key, separator));
+	}
+
+	/**
+	 * Parses the value of the given key and tries to split it on the given separator (a regular expression like for {@link String#split(String)}).
+	 * The parts are trimmed and empty parts are skipped. The result is cached until the property changes.
+	 *
+	 * @param key       The properties key
+	 * @param separator The separator
+	 * @return The unmodifiable {@link List} of split {@link String}s
+	 */
+	public List<String> getPropertyList(String key, String separator)
+	{
+		Parsed entry = getEntry(key);
 
-		List<String> result = new ArrayList<>();
+		if (entry == null || StringUtils.isEmpty(entry.raw))
+			return Collections.emptyList();
 
-		if (!StringUtils.isEmpty(property))
-		{
-			String[] parts = property.split(separator);
+		/* Racing threads may both create the map or split the value, but they'll produce equal results */
+		Map<String, List<String>> lists = entry.lists;
 
-			for (String part : parts)
-			{
-				part = part.trim();
-				if (!StringUtils.isEmpty(part))
-					result.add(part);
-			}
+		if (lists == null)
+			entry.lists = lists = new ConcurrentHashMap<>();
+
+		List<String> result = lists.get(separator);
+
+		if (result == null)
+		{
+			result = Collections.unmodifiableList(Separator.get(separator).split(entry.raw));
+			lists.put(separator, result);
 		}
 
 		return result;
@@ -95,208 +165,1775 @@ public abstract class PropertyReader
 		if (!StringUtils.isEmpty(key))
 		{
 			if (StringUtils.isEmpty(value))
-				properties.remove(key);
+				value = null;
+
+			Object previous;
+			if (backing.get() != null)
+				previous = setPublished(key, value);
+			else if (value == null)
+				previous = properties.remove(key);
 			else
-				properties.put(key, value);
+				previous = properties.put(key, value);
+
+			if (!Objects.equals(previous, value))
+			{
+				dirtyKeys.add(key);
+				parsed.remove(key);
+			}
 		}
 	}
 
 	/**
-	 * Stores the {@link Parameter}s from the {@link ParameterStore} to the {@link Properties} object and then saves it using {@link
-	 * Properties#store(Writer, String)}.
+	 * Publishes the given {@link Properties}, see {@link #publish(Map)}.
 	 *
-	 * @throws IOException Thrown if the file interaction fails
+	 * @param source The loaded {@link Properties}
 	 */
-	public abstract void store() throws IOException;
+	protected void publish(Properties source)
+	{
+		Map<String, String> map = new HashMap<>();
+
+		for (String key : source.stringPropertyNames())
+			map.put(key, source.getProperty(key));
+
+		publish(map);
+	}
 
 	/**
-	 * Reads a property from the .properties file
+	 * Switches this {@link PropertyReader} to an immutable map that is read without locking instead of the synchronized {@link #properties}. Meant
+	 * to be called from {@link #load()} once the properties have been read. The map is swapped atomically, so readers either see the old or the
+	 * new properties. Later calls to {@link #set(String, String)} are applied as copy-on-write changes and {@link #properties} is no longer used,
+	 * so {@link #store()} should use {@link #exportProperties()}.
 	 *
-	 * @param propertyName The property to read
-	 * @return The property or <code>null</code> if the property is not found
+	 * @param source The loaded properties
 	 */
-	public String getProperty(String propertyName)
+	protected void publish(Map<String, String> source)
 	{
-		return properties.getProperty(propertyName);
+		backing.set(new Backing(Collections.unmodifiableMap(new HashMap<>(source)), Collections.emptyMap()));
 	}
 
 	/**
-	 * Reads a property from the .properties file. The fallback will be used if there is no such property.
+	 * Returns the keys of the properties that have been changed via {@link #set(String, String)} and haven't been stored yet
 	 *
-	 * @param propertyName The property to read
-	 * @param fallback     The value that is returned if the property isn't set
-	 * @return The property or the fallback if the property is not found
+	 * @return An unmodifiable view of the changed keys
 	 */
-	public String getProperty(String propertyName, String fallback)
+	protected Set<String> getDirtyKeys()
 	{
-		String property = properties.getProperty(propertyName);
-
-		return StringUtils.isEmpty(property) ? fallback : property;
+		return Collections.unmodifiableSet(dirtyKeys);
 	}
 
 	/**
-	 * Reads an {@link Integer} property from the .properties file
+	 * Returns the current properties as a {@link Properties} object, e.g. to store them. If {@link #publish(Map)} has been used, this is a new
+	 * {@link Properties} object, otherwise it's {@link #properties} itself.
 	 *
-	 * @param propertyName The property to read
-	 * @return The {@link Integer} property
+	 * @return The current properties
 	 */
-	public Integer getPropertyInteger(String propertyName)
+	protected Properties exportProperties()
 	{
-		return Integer.parseInt(getProperty(propertyName));
+		Backing current = backing.get();
+
+		if (current == null)
+			return properties;
+
+		Properties result = new Properties();
+		current.forEach(result::setProperty);
+		return result;
 	}
 
 	/**
-	 * Reads an {@link Integer} property from the .properties file. The fallback will be used if there is no such property.
+	 * Applies the change as a copy-on-write delta to the published properties
 	 *
-	 * @param propertyName The property to read
-	 * @param fallback     The value that is returned if the property isn't set
-	 * @return The {@link Integer} property
+	 * @return The previous value
 	 */
-	public Integer getPropertyInteger(String propertyName, int fallback)
+	private String setPublished(String key, String value)
 	{
-		try
-		{
-			return Integer.parseInt(getProperty(propertyName));
-		}
-		catch (Exception e)
+		while (true)
 		{
-			return fallback;
+			Backing current = backing.get();
+			String previous = current.get(key);
+
+			if (Objects.equals(previous, value) || backing.compareAndSet(current, current.with(key, value)))
+				return previous;
 		}
 	}
 
 	/**
-	 * Reads an {@link Boolean} property from the .properties file
+	 * Loads the given {@link File} using ISO 8859-1, see {@link #loadFile(File, Charset)}.
 	 *
-	 * @param propertyName The property to read
-	 * @return The {@link Boolean} property
+	 * @param file The properties {@link File}
+	 * @return <code>true</code> if the {@link File} has been read, <code>false</code> if it hasn't changed since the last time
+	 * @throws IOException Thrown if the file interaction fails
 	 */
-	public Boolean getPropertyBoolean(String propertyName)
+	protected boolean loadFile(File file) throws IOException
 	{
-		return Boolean.parseBoolean(getProperty(propertyName));
+		return loadFile(file, StandardCharsets.ISO_8859_1);
 	}
 
 	/**
-	 * Reads an {@link Boolean} property from the .properties file. The fallback will be used if there is no such property.
+	 * Loads the given {@link File} into {@link #properties} (or publishes it if {@link #publish(Map)} is used) unless it hasn't changed since it
+	 * has last been loaded or stored by this {@link PropertyReader}. Meant to be called from {@link #load()}. If size and modification date are
+	 * the same, the {@link File} isn't read at all. Otherwise its content is only parsed if its checksum differs. Properties that have been
+	 * changed via {@link #set(String, String)} and haven't been stored yet keep their values.
+	 * <p>
+	 * The return value only tells whether the properties have been replaced. It must not be used to skip populating {@link ParameterStore}s,
+	 * see {@link #load()}.
 	 *
-	 * @param propertyName The property to read
-	 * @param fallback     The value that is returned if the property isn't set
-	 * @return The {@link Boolean} property
+	 * @param file    The properties {@link File}
+	 * @param charset The {@link Charset} of the {@link File}
+	 * @return <code>true</code> if the {@link File} has been read, <code>false</code> if it hasn't changed since the last time
+	 * @throws IOException Thrown if the file interaction fails
 	 */
-	public Boolean getPropertyBoolean(String propertyName, boolean fallback)
+	protected boolean loadFile(File file, Charset charset) throws IOException
 	{
-		try
+		File key = file.getAbsoluteFile();
+		FileState known = fileStates.get(key);
+
+		if (known != null && known.isStateOf(file))
+			return false;
+
+		/* Get the modification date first, so a concurrent change is picked up next time */
+		long modified = file.lastModified();
+		byte[] content = Files.readAllBytes(file.toPath());
+		FileState state = new FileState(content, modified);
+		fileStates.put(key, state);
+
+		if (known != null && known.hasContentOf(state))
+			return false;
+
+		Properties loaded = new Properties();
+		loaded.load(new InputStreamReader(new ByteArrayInputStream(content), charset));
+
+		Map<String, String> unsaved = getUnsavedChanges();
+
+		if (backing.get() != null)
 		{
-			return Boolean.parseBoolean(getProperty(propertyName));
+			Map<String, String> values = new HashMap<>();
+			for (String name : loaded.stringPropertyNames())
+				values.put(name, loaded.getProperty(name));
+
+			unsaved.forEach((name, value) -> {
+				if (value == null)
+					values.remove(name);
+				else
+					values.put(name, value);
+			});
+
+			publish(values);
 		}
-		catch (Exception e)
+		else
 		{
-			return fallback;
+			for (String name : loaded.stringPropertyNames())
+			{
+				if (!unsaved.containsKey(name))
+					properties.put(name, loaded.getProperty(name));
+			}
 		}
+
+		return true;
 	}
 
 	/**
-	 * Reads an {@link Long} property from the .properties file
+	 * Loads the given UTF-8 encoded {@link File} through a memory-mapped {@link FileChannel} into {@link LazyProperties} and publishes them (see
+	 * {@link #publish(Map)}). Meant for very large files: comments and whitespace are skipped without creating {@link String}s and values are only
+	 * decoded when they are first read. Like {@link #loadFile(File, Charset)}, nothing happens if the {@link File} hasn't changed and unsaved changes
+	 * are kept. On Windows, the {@link File} is read into memory instead, since a mapped {@link File} can't be replaced until the mapping has been
+	 * garbage collected. As with {@link #loadFile(File, Charset)}, the return value must not be used to skip populating {@link ParameterStore}s.
 	 *
-	 * @param propertyName The property to read
-	 * @return The {@link Long} property
+	 * @param file The properties {@link File}
+	 * @return <code>true</code> if the {@link File} has been read, <code>false</code> if it hasn't changed since the last time
+	 * @throws IOException Thrown if the file interaction fails
 	 */
-	public Long getPropertyLong(String propertyName)
+	protected boolean loadMapped(File file) throws IOException
+	{
+		File key = file.getAbsoluteFile();
+		FileState known = fileStates.get(key);
+
+		if (known != null && known.isStateOf(file))
+			return false;
+
+		long modified = file.lastModified();
+		ByteBuffer buffer;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			if (OSUtils.isWindows())
+			{
+				buffer = ByteBuffer.allocate((int) channel.size());
+				while (buffer.hasRemaining())
+				{
+					if (channel.read(buffer) == -1)
+						break;
+				}
+				buffer.flip();
+			}
+			else
+			{
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+		}
+
+		FileState state = new FileState(buffer.duplicate(), modified);
+		fileStates.put(key, state);
+
+		if (known != null && known.hasContentOf(state))
+			return false;
+
+		/* LazyProperties are immutable already, so they're published without copying and unsaved changes are kept as a delta */
+		backing.set(new Backing(LazyProperties.parse(buffer), Collections.unmodifiableMap(getUnsavedChanges())));
+
+		return true;
+	}
+
+	/**
+	 * Returns the current values of the properties that have been changed via {@link #set(String, String)} and haven't been stored yet. Removed
+	 * properties are mapped to <code>null</code>.
+	 */
+	private Map<String, String> getUnsavedChanges()
 	{
-		return Long.parseLong(getProperty(propertyName));
+		Map<String, String> result = new HashMap<>();
+
+		for (String key : dirtyKeys)
+			result.put(key, getProperty(key));
+
+		return result;
 	}
 
 	/**
-	 * Reads an {@link Long} property from the .properties file. The fallback will be used if there is no such property.
+	 * Watches the given {@link File} using ISO 8859-1, see {@link #watch(File, Charset)}.
 	 *
-	 * @param propertyName The property to read
-	 * @param fallback     The value that is returned if the property isn't set
-	 * @return The {@link Long} property
+	 * @param file The properties {@link File}
+	 * @throws IOException Thrown if the file interaction fails
 	 */
-	public Long getPropertyLong(String propertyName, long fallback)
+	public void watch(File file) throws IOException
 	{
-		try
+		watch(file, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Watches the given {@link File} for changes and reloads the properties that have changed in the {@link File}. Reloads are delayed until the
+	 * {@link File} hasn't changed for a short while. Properties that have been changed via {@link #set(String, String)} and haven't been stored
+	 * yet are kept. The {@link ReloadListener}s are notified about the properties that have actually changed. The {@link File} should already
+	 * have been loaded via {@link #load()}.
+	 *
+	 * @param file    The properties {@link File}
+	 * @param charset The {@link Charset} of the {@link File}
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	public synchronized void watch(File file, Charset charset) throws IOException
+	{
+		stopWatching();
+
+		watcher = new Watcher(file.getAbsoluteFile(), charset);
+	}
+
+	/**
+	 * Stops watching the properties {@link File}
+	 */
+	public synchronized void stopWatching()
+	{
+		if (watcher != null)
 		{
-			return Long.parseLong(getProperty(propertyName));
+			watcher.close();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Adds a {@link ReloadListener}. It's notified on the thread of the {@link Display} that is current while adding it, or on the background
+	 * thread that reloads the file if there is no such {@link Display}.
+	 *
+	 * @param listener The {@link ReloadListener} to add
+	 */
+	public void addReloadListener(ReloadListener listener)
+	{
+		reloadListeners.add(listener);
+
+		Display current = Display.getCurrent();
+		if (current != null)
+			reloadDisplay = current;
+	}
+
+	public void removeReloadListener(ReloadListener listener)
+	{
+		reloadListeners.remove(listener);
+	}
+
+	/**
+	 * Applies the changes between the previous and the current content of the watched file and notifies the {@link ReloadListener}s
+	 */
+	private void reload(Map<String, String> previous, Map<String, String> current)
+	{
+		Set<String> changes = new HashSet<>();
+		Set<String> keys = new HashSet<>(previous.keySet());
+		keys.addAll(current.keySet());
+
+		for (String key : keys)
+		{
+			String value = current.get(key);
+
+			/* Only touch what has changed in the file and keep changes that haven't been stored yet */
+			if (Objects.equals(previous.get(key), value) || dirtyKeys.contains(key))
+				continue;
+
+			Object old;
+			if (backing.get() != null)
+				old = setPublished(key, value);
+			else if (value == null)
+				old = properties.remove(key);
+			else
+				old = properties.put(key, value);
+
+			if (!Objects.equals(old, value))
+				changes.add(key);
 		}
-		catch (Exception e)
+
+		if (!changes.isEmpty() && !reloadListeners.isEmpty())
 		{
-			return fallback;
+			Set<String> changed = Collections.unmodifiableSet(changes);
+			Runnable notify = () -> reloadListeners.forEach(l -> l.onReload(this, changed));
+			Display display = reloadDisplay;
+
+			if (display == null || display.isDisposed())
+			{
+				notify.run();
+				return;
+			}
+
+			try
+			{
+				display.asyncExec(notify);
+			}
+			catch (SWTException e)
+			{
+				/* The display has been disposed in the meantime */
+				notify.run();
+			}
 		}
 	}
 
 	/**
-	 * Reads an {@link Double} property from the .properties file
+	 * Checks whether there are changes that haven't been stored yet, either to the properties themselves (via {@link #set(String, String)}) or to
+	 * the default {@link ParameterStore}. Changes to other {@link ParameterStore}s, values computed in {@link #store()} and changes written to
+	 * {@link #properties} directly aren't tracked, so only subclasses that know about all their state should use this to skip {@link #store()}.
 	 *
-	 * @param propertyName The property to read
-	 * @return The {@link Double} property
+	 * @return <code>true</code> if there are changes that haven't been stored yet
+	 * @see ParameterStore#isDirty()
 	 */
-	public Double getPropertyDouble(String propertyName)
+	public boolean isDirty()
 	{
-		return Double.parseDouble(getProperty(propertyName));
+		return !dirtyKeys.isEmpty() || ParameterStores.getDefault().isDirty();
 	}
 
 	/**
-	 * Reads an {@link Double} property from the .properties file. The fallback will be used if there is no such property.
+	 * Marks the properties and the default {@link ParameterStore} as clean. Called after {@link #load()} and {@link #store()}.
 	 *
-	 * @param propertyName The property to read
-	 * @param fallback     The value that is returned if the property isn't set
-	 * @return The {@link Double} property
+	 * @see ParameterStore#markClean()
 	 */
-	public Double getPropertyDouble(String propertyName, double fallback)
+	public void markClean()
 	{
-		try
-		{
-			return Double.parseDouble(getProperty(propertyName));
-		}
-		catch (Exception e)
+		dirtyKeys.clear();
+		ParameterStores.getDefault().markClean();
+	}
+
+	/**
+	 * Writes the properties that have been changed via {@link #set(String, String)} to the given {@link File} using ISO 8859-1 like {@link
+	 * Properties#store(OutputStream, String)}.
+	 *
+	 * @param file The properties {@link File}
+	 * @throws IOException Thrown if the file interaction fails
+	 * @see #storeChanges(File, Charset)
+	 */
+	protected void storeChanges(File file) throws IOException
+	{
+		storeChanges(file, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Writes the properties that have been changed via {@link #set(String, String)} to the given {@link File}. Unchanged lines, comments and the
+	 * order of the entries are kept. Changed entries are replaced in place, removed entries are deleted and new entries are appended. If the {@link
+	 * File} doesn't exist yet, all properties are written unless {@link #storesAllProperties()} returns <code>false</code>. Nothing is written if
+	 * there are no changes or if the result is the same as what has last been loaded or stored by this {@link PropertyReader}.
+	 * <p>
+	 * Like {@link Properties#store(OutputStream, String)}, all characters above <code>U+007E</code> in the written entries are escaped as
+	 * <code>&#92;uXXXX</code>, so the entries read the same with ISO 8859-1 and UTF-8.
+	 *
+	 * @param file    The properties {@link File}
+	 * @param charset The {@link Charset} of the {@link File}, which is used for the lines that are kept
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	protected void storeChanges(File file, Charset charset) throws IOException
+	{
+		/* Holding the write lock keeps an older pending store from being written after this one */
+		synchronized (writeLock)
 		{
-			return fallback;
+			Set<String> changes = new HashSet<>(dirtyKeys);
+
+			/* Include the changes of a pending asynchronous store, since this writes the newer values anyway */
+			PendingStore pending = takePendingStore(file);
+			if (pending != null)
+				changes.addAll(pending.changes);
+
+			try
+			{
+				writeChanges(file, charset, changes, snapshot());
+			}
+			catch (IOException e)
+			{
+				if (pending != null)
+					dirtyKeys.addAll(pending.changes);
+				throw e;
+			}
+
+			dirtyKeys.removeAll(changes);
 		}
 	}
 
 	/**
-	 * Reads an {@link Float} property from the .properties file
+	 * Stores the changes like {@link #storeChanges(File, Charset)} using ISO 8859-1, but in the background, see {@link #storeChangesAsync(File,
+	 * Charset)}.
 	 *
-	 * @param propertyName The property to read
-	 * @return The {@link Float} property
+	 * @param file The properties {@link File}
 	 */
-	public Float getPropertyFloat(String propertyName)
+	protected void storeChangesAsync(File file)
 	{
-		return Float.parseFloat(getProperty(propertyName));
+		storeChangesAsync(file, StandardCharsets.ISO_8859_1);
 	}
 
 	/**
-	 * Reads an {@link Float} property from the .properties file. The fallback will be used if there is no such property.
+	 * Stores the changes like {@link #storeChanges(File, Charset)}, but in the background. The current values are captured on the calling thread,
+	 * the {@link File} is written by a background thread shortly after. Further calls within that time are combined into a single write. Use {@link
+	 * #flush(long, TimeUnit)} to wait for pending writes, e.g. before exiting. If the write fails, the changes are marked as dirty again.
 	 *
-	 * @param propertyName The property to read
-	 * @param fallback     The value that is returned if the property isn't set
-	 * @return The {@link Float} property
+	 * @param file    The properties {@link File}
+	 * @param charset The {@link Charset} of the {@link File}
 	 */
-	public Float getPropertyFloat(String propertyName, float fallback)
+	protected void storeChangesAsync(File file, Charset charset)
+	{
+		Set<String> changes = new HashSet<>(dirtyKeys);
+		Backing values = snapshot();
+		dirtyKeys.removeAll(changes);
+
+		synchronized (storeLock)
+		{
+			if (storeExecutor == null)
+			{
+				storeExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+					Thread thread = new Thread(r, "PropertyReader-Store");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+
+			if (pendingStore != null)
+			{
+				if (pendingStore.file.equals(file))
+					changes.addAll(pendingStore.changes);
+				else
+					storeExecutor.execute(pendingStore::write);
+			}
+
+			pendingStore = new PendingStore(file, charset, changes, values);
+
+			if (storeFuture == null || storeFuture.isDone())
+				storeFuture = storeExecutor.schedule(this::writePendingStore, STORE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes pending changes of {@link #storeChangesAsync(File, Charset)} right away and waits for them to be written
+	 *
+	 * @param timeout The maximum time to wait
+	 * @param unit    The {@link TimeUnit} of the timeout
+	 * @return <code>true</code> if all changes have been written, <code>false</code> if the timeout has elapsed or writing has failed
+	 */
+	public boolean flush(long timeout, TimeUnit unit)
 	{
+		Future<Boolean> future;
+
+		synchronized (storeLock)
+		{
+			if (storeExecutor == null)
+				return true;
+
+			if (storeFuture != null)
+				storeFuture.cancel(false);
+
+			/* Runs after a write that's already in progress */
+			future = storeExecutor.submit(this::writePendingStore);
+		}
+
 		try
 		{
-			return Float.parseFloat(getProperty(propertyName));
+			return future.get(timeout, unit);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
 		}
-		catch (Exception e)
+		catch (ExecutionException | TimeoutException e)
 		{
-			return fallback;
+			return false;
 		}
 	}
 
 	/**
-	 * Reads a property from the .properties file and substitutes parameters
-	 *
-	 * @param propertyName The property to read
-	 * @param parameters   The parameters to substitute
-	 * @return The property or null if the property is not found
+	 * Writes the pending store. It's taken while holding the write lock, so a synchronous {@link #storeChanges(File, Charset)} either includes it or
+	 * runs after it has been written.
 	 */
-	public String getProperty(String propertyName, Object... parameters)
+	private boolean writePendingStore()
 	{
-		String property = properties.getProperty(propertyName);
-		if (parameters.length > 0)
-			return String.format(property, parameters);
-		else
-			return property;
+		synchronized (writeLock)
+		{
+			PendingStore pending;
+
+			synchronized (storeLock)
+			{
+				pending = pendingStore;
+				pendingStore = null;
+			}
+
+			return pending == null || pending.write();
+		}
+	}
+
+	private PendingStore takePendingStore(File file)
+	{
+		synchronized (storeLock)
+		{
+			PendingStore pending = pendingStore;
+
+			if (pending == null || !pending.file.equals(file))
+				return null;
+
+			pendingStore = null;
+			return pending;
+		}
+	}
+
+	/**
+	 * Returns an immutable copy of the current properties
+	 */
+	private Backing snapshot()
+	{
+		Backing current = backing.get();
+
+		if (current != null)
+			return current;
+
+		Map<String, String> values = new HashMap<>();
+		for (String key : properties.stringPropertyNames())
+			values.put(key, properties.getProperty(key));
+
+		return new Backing(values, Collections.emptyMap());
+	}
+
+	/**
+	 * Returns whether {@link #storeChanges(File, Charset)} writes all properties to a {@link File} that doesn't exist yet. Otherwise only the
+	 * properties that have been changed via {@link #set(String, String)} are written.
+	 *
+	 * @return <code>true</code> if all properties are written to a new {@link File}
+	 */
+	protected boolean storesAllProperties()
+	{
+		return true;
+	}
+
+	/**
+	 * Writes the given changes with the given values to the {@link File}, see {@link #storeChanges(File, Charset)}
+	 */
+	private void writeChanges(File file, Charset charset, Set<String> changed, Backing values) throws IOException
+	{
+		synchronized (writeLock)
+		{
+			writeChangesLocked(file, charset, new HashSet<>(changed), values);
+		}
+	}
+
+	private void writeChangesLocked(File file, Charset charset, Set<String> changes, Backing values) throws IOException
+	{
+		if ((file.exists() || !storesAllProperties()) && changes.isEmpty())
+			return;
+
+		String newLine = System.lineSeparator();
+		StringBuilder result = new StringBuilder();
+
+		if (file.exists())
+		{
+			String content = new String(Files.readAllBytes(file.toPath()), charset);
+			if (content.contains("\r\n"))
+				newLine = "\r\n";
+
+			String[] lines = content.split("\r?\n", -1);
+			int count = content.endsWith("\n") ? lines.length - 1 : lines.length;
+			Set<String> written = new HashSet<>();
+
+			for (int i = 0; i < count; i++)
+			{
+				String line = lines[i];
+				String trimmed = line.trim();
+
+				if (trimmed.isEmpty() || trimmed.charAt(0) == '#' || trimmed.charAt(0) == '!')
+				{
+					result.append(line).append(newLine);
+					continue;
+				}
+
+				/* Collect the physical lines of this entry */
+				int end = i;
+				while (endsWithContinuation(lines[end]) && end + 1 < count)
+					end++;
+
+				String key = parseKey(trimmed);
+
+				if (changes.contains(key))
+				{
+					String value = values.get(key);
+
+					if (value != null && written.add(key))
+						appendEntry(result, key, value).append(newLine);
+				}
+				else
+				{
+					for (int j = i; j <= end; j++)
+						result.append(lines[j]).append(newLine);
+				}
+
+				i = end;
+			}
+
+			changes.removeAll(written);
+		}
+		else if (storesAllProperties())
+		{
+			values.forEach((key, value) -> changes.add(key));
+		}
+
+		/* Append the entries that haven't been in the file before */
+		for (String key : new TreeSet<>(changes))
+		{
+			String value = values.get(key);
+
+			if (value != null)
+				appendEntry(result, key, value).append(newLine);
+		}
+
+		byte[] content = result.toString().getBytes(charset);
+		File key = file.getAbsoluteFile();
+		FileState known = fileStates.get(key);
+
+		if (known != null && known.isStateOf(file) && known.hasContentOf(new FileState(content, 0)))
+			return;
+
+		Path temp = Paths.get(file.getPath() + ".tmp");
+		Files.write(temp, content);
+
+		try
+		{
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		fileStates.put(key, new FileState(content, file.lastModified()));
+	}
+
+	private static boolean endsWithContinuation(String line)
+	{
+		int backslashes = 0;
+		for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--)
+			backslashes++;
+
+		return backslashes % 2 == 1;
+	}
+
+	/**
+	 * Extracts the unescaped key from the given properties line (without leading whitespace)
+	 */
+	private static String parseKey(String line)
+	{
+		StringBuilder key = new StringBuilder();
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+
+			if (c == '=' || c == ':' || c == ' ' || c == '\t' || c == '\f')
+				break;
+
+			if (c == '\\' && i + 1 < line.length())
+			{
+				c = line.charAt(++i);
+
+				switch (c)
+				{
+					case 't':
+						c = '\t';
+						break;
+					case 'n':
+						c = '\n';
+						break;
+					case 'r':
+						c = '\r';
+						break;
+					case 'f':
+						c = '\f';
+						break;
+					case 'u':
+						if (i + 4 < line.length())
+						{
+							c = (char) Integer.parseInt(line.substring(i + 1, i + 5), 16);
+							i += 4;
+						}
+						break;
+				}
+			}
+
+			key.append(c);
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Appends the escaped entry in the same format as {@link Properties#store(Writer, String)}
+	 */
+	private static StringBuilder appendEntry(StringBuilder builder, String key, String value)
+	{
+		escape(builder, key, true);
+		builder.append('=');
+		escape(builder, value, false);
+		return builder;
+	}
+
+	private static void escape(StringBuilder builder, String text, boolean isKey)
+	{
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+
+			switch (c)
+			{
+				case ' ':
+					if (i == 0 || isKey)
+						builder.append('\\');
+					builder.append(' ');
+					break;
+				case '\t':
+					builder.append("\\t");
+					break;
+				case '\n':
+					builder.append("\\n");
+					break;
+				case '\r':
+					builder.append("\\r");
+					break;
+				case '\f':
+					builder.append("\\f");
+					break;
+				case '=':
+				case ':':
+				case '#':
+				case '!':
+				case '\\':
+					builder.append('\\').append(c);
+					break;
+				default:
+					if (c < 0x20 || c > 0x7e)
+						builder.append(String.format("\\u%04X", (int) c));
+					else
+						builder.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Stores the {@link Parameter}s from the {@link ParameterStore} to the {@link Properties} object and then saves it using {@link
+	 * Properties#store(Writer, String)}.
+	 *
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	public abstract void store() throws IOException;
+
+	/**
+	 * Reads a property from the .properties file
+	 *
+	 * @param propertyName The property to read
+	 * @return The property or <code>null</code> if the property is not found
+	 */
+	public String getProperty(String propertyName)
+	{
+		Backing current = backing.get();
+
+		if (current == null)
+			return properties.getProperty(propertyName);
+		else
+			return current.get(propertyName);
+	}
+
+	/**
+	 * Reads a property from the .properties file. The fallback will be used if there is no such property.
+	 *
+	 * @param propertyName The property to read
+	 * @param fallback     The value that is returned if the property isn't set
+	 * @return The property or the fallback if the property is not found
+	 */
+	public String getProperty(String propertyName, String fallback)
+	{
+		String property = getProperty(propertyName);
+
+		return StringUtils.isEmpty(property) ? fallback : property;
+	}
+
+	/**
+	 * Reads the typed property from the .properties file. The value is decoded and validated once and then cached until the property changes, so
+	 * mutable values shouldn't be modified.
+	 *
+	 * @param key The {@link PropertyKey}
+	 * @param <T> The type of the value
+	 * @return The value or the default of the {@link PropertyKey} if the property isn't set or invalid
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(PropertyKey<T> key)
+	{
+		Object value = getDecoded(key);
+
+		return value == null || value == INVALID ? key.getDefault() : (T) value;
+	}
+
+	/**
+	 * Sets the typed property. Setting <code>null</code> removes the property.
+	 *
+	 * @param key   The {@link PropertyKey}
+	 * @param value The value
+	 * @param <T>   The type of the value
+	 * @throws IllegalArgumentException Thrown if the value isn't valid for the {@link PropertyKey}
+	 */
+	public <T> void set(PropertyKey<T> key, T value)
+	{
+		if (value != null && !key.isValid(value))
+			throw new IllegalArgumentException("Invalid value for " + key.getName() + ": " + value);
+
+		set(key.getName(), value == null ? null : key.getCodec().format(value));
+	}
+
+	/**
+	 * Decodes and validates all the given {@link PropertyKey}s, e.g. after {@link #load()}. The decoded values are cached for {@link
+	 * #get(PropertyKey)}.
+	 *
+	 * @param keys The {@link PropertyKey}s to validate
+	 * @return The {@link PropertyKey}s of the properties that are set but can't be decoded or are invalid
+	 */
+	public List<PropertyKey<?>> validate(PropertyKey<?>... keys)
+	{
+		return validate(Arrays.asList(keys));
+	}
+
+	/**
+	 * Decodes and validates all the given {@link PropertyKey}s, e.g. after {@link #load()}. The decoded values are cached for {@link
+	 * #get(PropertyKey)}.
+	 *
+	 * @param keys The {@link PropertyKey}s to validate
+	 * @return The {@link PropertyKey}s of the properties that are set but can't be decoded or are invalid
+	 */
+	public List<PropertyKey<?>> validate(Collection<? extends PropertyKey<?>> keys)
+	{
+		List<PropertyKey<?>> result = new ArrayList<>();
+
+		for (PropertyKey<?> key : keys)
+		{
+			if (getDecoded(key) == INVALID)
+				result.add(key);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads an {@link Integer} property from the .properties file
+	 *
+	 * @param propertyName The property to read
+	 * @return The {@link Integer} property
+	 */
+	public Integer getPropertyInteger(String propertyName)
+	{
+		Object value = getParsed(propertyName, TYPE_INTEGER);
+
+		if (value instanceof Integer)
+			return (Integer) value;
+		else
+			return Integer.parseInt(getProperty(propertyName));
+	}
+
+	/**
+	 * Reads an {@link Integer} property from the .properties file. The fallback will be used if there is no such property.
+	 *
+	 * @param propertyName The property to read
+	 * @param fallback     The value that is returned if the property isn't set
+	 * @return The {@link Integer} property
+	 */
+	public Integer getPropertyInteger(String propertyName, int fallback)
+	{
+		Object value = getParsed(propertyName, TYPE_INTEGER);
+
+		return value instanceof Integer ? (Integer) value : fallback;
+	}
+
+	/**
+	 * Reads an {@link Boolean} property from the .properties file
+	 *
+	 * @param propertyName The property to read
+	 * @return The {@link Boolean} property
+	 */
+	public Boolean getPropertyBoolean(String propertyName)
+	{
+		return getParsed(propertyName, TYPE_BOOLEAN) == Boolean.TRUE;
+	}
+
+	/**
+	 * Reads an {@link Boolean} property from the .properties file. The fallback will be used if there is no such property.
+	 *
+	 * @param propertyName The property to read
+	 * @param fallback     The value that is returned if the property isn't set
+	 * @return The {@link Boolean} property
+	 */
+	public Boolean getPropertyBoolean(String propertyName, boolean fallback)
+	{
+		Object value = getParsed(propertyName, TYPE_BOOLEAN);
+
+		return value instanceof Boolean ? (Boolean) value : fallback;
+	}
+
+	/**
+	 * Reads an {@link Long} property from the .properties file
+	 *
+	 * @param propertyName The property to read
+	 * @return The {@link Long} property
+	 */
+	public Long getPropertyLong(String propertyName)
+	{
+		Object value = getParsed(propertyName, TYPE_LONG);
+
+		if (value instanceof Long)
+			return (Long) value;
+		else
+			return Long.parseLong(getProperty(propertyName));
+	}
+
+	/**
+	 * Reads an {@link Long} property from the .properties file. The fallback will be used if there is no such property.
+	 *
+	 * @param propertyName The property to read
+	 * @param fallback     The value that is returned if the property isn't set
+	 * @return The {@link Long} property
+	 */
+	public Long getPropertyLong(String propertyName, long fallback)
+	{
+		Object value = getParsed(propertyName, TYPE_LONG);
+
+		return value instanceof Long ? (Long) value : fallback;
+	}
+
+	/**
+	 * Reads an {@link Double} property from the .properties file
+	 *
+	 * @param propertyName The property to read
+	 * @return The {@link Double} property
+	 */
+	public Double getPropertyDouble(String propertyName)
+	{
+		Object value = getParsed(propertyName, TYPE_DOUBLE);
+
+		if (value instanceof Double)
+			return (Double) value;
+		else
+			return Double.parseDouble(getProperty(propertyName));
+	}
+
+	/**
+	 * Reads an {@link Double} property from the .properties file. The fallback will be used if there is no such property.
+	 *
+	 * @param propertyName The property to read
+	 * @param fallback     The value that is returned if the property isn't set
+	 * @return The {@link Double} property
+	 */
+	public Double getPropertyDouble(String propertyName, double fallback)
+	{
+		Object value = getParsed(propertyName, TYPE_DOUBLE);
+
+		return value instanceof Double ? (Double) value : fallback;
+	}
+
+	/**
+	 * Reads an {@link Float} property from the .properties file
+	 *
+	 * @param propertyName The property to read
+	 * @return The {@link Float} property
+	 */
+	public Float getPropertyFloat(String propertyName)
+	{
+		Object value = getParsed(propertyName, TYPE_FLOAT);
+
+		if (value instanceof Float)
+			return (Float) value;
+		else
+			return Float.parseFloat(getProperty(propertyName));
+	}
+
+	/**
+	 * Reads an {@link Float} property from the .properties file. The fallback will be used if there is no such property.
+	 *
+	 * @param propertyName The property to read
+	 * @param fallback     The value that is returned if the property isn't set
+	 * @return The {@link Float} property
+	 */
+	public Float getPropertyFloat(String propertyName, float fallback)
+	{
+		Object value = getParsed(propertyName, TYPE_FLOAT);
+
+		return value instanceof Float ? (Float) value : fallback;
+	}
+
+	/**
+	 * Reads a property from the .properties file and substitutes parameters
+	 *
+	 * @param propertyName The property to read
+	 * @param parameters   The parameters to substitute
+	 * @return The property or null if the property is not found
+	 * @see #appendProperty(Appendable, String, Object...)
+	 */
+	public String getProperty(String propertyName, Object... parameters)
+	{
+		if (parameters.length == 0)
+			return getProperty(propertyName);
+
+		try
+		{
+			return appendProperty(new StringBuilder(), propertyName, parameters).toString();
+		}
+		catch (IOException e)
+		{
+			/* StringBuilder doesn't throw */
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads a property from the .properties file, substitutes parameters like {@link String#format(String, Object...)} and appends the result to
+	 * the given {@link Appendable}. The format is compiled once per property value, common specifiers (<code>%s</code>, <code>%d</code>,
+	 * <code>%n</code>, <code>%%</code> and their explicitly indexed forms like <code>%1$s</code>) are then substituted without parsing the format
+	 * again. Everything else is passed on to {@link String#format(String, Object...)}.
+	 *
+	 * @param target       The {@link Appendable} to append to
+	 * @param propertyName The property to read
+	 * @param parameters   The parameters to substitute
+	 * @param <A>          The type of the {@link Appendable}
+	 * @return The given {@link Appendable}
+	 * @throws IOException Thrown if appending fails
+	 */
+	public <A extends Appendable> A appendProperty(A target, String propertyName, Object... parameters) throws IOException
+	{
+		Parsed entry = getEntry(propertyName);
+
+		if (entry == null || parameters.length == 0)
+		{
+			target.append(parameters.length == 0 ? getProperty(propertyName) : String.format(getProperty(propertyName), parameters));
+			return target;
+		}
+
+		Template template = entry.template;
+
+		if (template == null)
+			entry.template = template = Template.compile(entry.raw);
+
+		if (!template.appendTo(target, parameters))
+			target.append(String.format(entry.raw, parameters));
+
+		return target;
+	}
+
+	/**
+	 * Returns the parsed value of the given property. The parsed values are cached per property and type and are only reused as long as the raw
+	 * {@link String} is the same instance, so changes to {@link #properties} that don't go through {@link #set(String, String)} (like {@link #load()})
+	 * are picked up as well.
+	 *
+	 * @return The parsed value, {@link #INVALID} if the value can't be parsed or <code>null</code> if there is no such property
+	 */
+	private Object getParsed(String propertyName, int type)
+	{
+		Parsed entry = getEntry(propertyName);
+
+		if (entry == null)
+			return null;
+
+		/* Racing threads may both parse the value, but they'll store equal immutable objects */
+		Object value = entry.values[type];
+
+		if (value == null)
+			entry.values[type] = value = parse(entry.raw, type);
+
+		return value;
+	}
+
+	/**
+	 * Returns the decoded value of the given {@link PropertyKey}, {@link #INVALID} if it can't be decoded or is invalid or <code>null</code> if the
+	 * property isn't set
+	 */
+	private <T> Object getDecoded(PropertyKey<T> key)
+	{
+		Parsed entry = getEntry(key.getName());
+
+		if (entry == null)
+			return null;
+
+		Decoded decoded = entry.decoded;
+
+		if (decoded == null || decoded.key != key)
+		{
+			Object value;
+
+			try
+			{
+				T parsed = key.getCodec().parse(entry.raw);
+				value = parsed != null && key.isValid(parsed) ? parsed : INVALID;
+			}
+			catch (IllegalArgumentException e)
+			{
+				value = INVALID;
+			}
+
+			entry.decoded = decoded = new Decoded(key, value);
+		}
+
+		return decoded.value;
+	}
+
+	/**
+	 * Returns the cache entry for the current raw value of the given property or <code>null</code> if there is no such property
+	 */
+	private Parsed getEntry(String propertyName)
+	{
+		String raw = getProperty(propertyName);
+
+		if (raw == null)
+			return null;
+
+		Parsed entry = parsed.get(propertyName);
+
+		if (entry == null || entry.raw != raw)
+		{
+			entry = new Parsed(raw);
+			parsed.put(propertyName, entry);
+		}
+
+		return entry;
+	}
+
+	private static Object parse(String raw, int type)
+	{
+		switch (type)
+		{
+			case TYPE_INTEGER:
+				Object number = parseLong(raw, Integer.MIN_VALUE, Integer.MAX_VALUE);
+				return number instanceof Long ? Integer.valueOf(((Long) number).intValue()) : INVALID;
+			case TYPE_LONG:
+				return parseLong(raw, Long.MIN_VALUE, Long.MAX_VALUE);
+			case TYPE_DOUBLE:
+				try
+				{
+					return Double.valueOf(raw);
+				}
+				catch (NumberFormatException e)
+				{
+					return INVALID;
+				}
+			case TYPE_FLOAT:
+				try
+				{
+					return Float.valueOf(raw);
+				}
+				catch (NumberFormatException e)
+				{
+					return INVALID;
+				}
+			case TYPE_BOOLEAN:
+				return Boolean.valueOf(raw);
+			default:
+				return INVALID;
+		}
+	}
+
+	/**
+	 * Parses the decimal number without throwing exceptions. Accepts the same input as {@link Long#parseLong(String)}.
+	 *
+	 * @return The {@link Long} or {@link #INVALID} if the input isn't a valid number within the given range
+	 */
+	private static Object parseLong(String text, long min, long max)
+	{
+		int length = text.length();
+
+		if (length == 0)
+			return INVALID;
+
+		int i = 0;
+		boolean negative = false;
+		char first = text.charAt(0);
+
+		if (first == '-' || first == '+')
+		{
+			if (length == 1)
+				return INVALID;
+
+			negative = first == '-';
+			i++;
+		}
+
+		/* Accumulate negatively, since the negative range is the larger one */
+		long limit = negative ? min : -max;
+		long multiplicationLimit = limit / 10;
+		long result = 0;
+
+		for (; i < length; i++)
+		{
+			int digit = Character.digit(text.charAt(i), 10);
+
+			if (digit < 0 || result < multiplicationLimit)
+				return INVALID;
+
+			result *= 10;
+
+			if (result < limit + digit)
+				return INVALID;
+
+			result -= digit;
+		}
+
+		return Long.valueOf(negative ? result : -result);
+	}
+
+	/**
+	 * The parsed values of a raw property value
+	 */
+	private static class Parsed
+	{
+		private final String   raw;
+		private final Object[] values = new Object[5];
+		private volatile Map<String, List<String>> lists;
+		private volatile Template                  template;
+		private volatile Decoded                   decoded;
+
+		private Parsed(String raw)
+		{
+			this.raw = raw;
+		}
+	}
+
+	/**
+	 * A separator for {@link #getPropertyList(String, String)}. Separators without regular expression meta characters (or a single escaped meta
+	 * character like <code>\\|</code>) are matched literally, everything else is compiled to a {@link Pattern} once.
+	 */
+	private static class Separator
+	{
+		private static final String META_CHARACTERS = ".$|()[]{}^?*+\\";
+
+		private final String  literal;
+		private final Pattern pattern;
+
+		private Separator(String separator)
+		{
+			String literal = null;
+
+			if (separator.length() == 2 && separator.charAt(0) == '\\' && META_CHARACTERS.indexOf(separator.charAt(1)) != -1)
+				literal = separator.substring(1);
+			else if (!separator.isEmpty() && !containsMetaCharacter(separator))
+				literal = separator;
+
+			this.literal = literal;
+			this.pattern = literal == null ? Pattern.compile(separator) : null;
+		}
+
+		private static Separator get(String separator)
+		{
+			return SEPARATORS.computeIfAbsent(separator, Separator::new);
+		}
+
+		private static boolean containsMetaCharacter(String separator)
+		{
+			for (int i = 0; i < separator.length(); i++)
+			{
+				if (META_CHARACTERS.indexOf(separator.charAt(i)) != -1)
+					return true;
+			}
+
+			return false;
+		}
+
+		private List<String> split(String text)
+		{
+			List<String> result = new ArrayList<>();
+
+			if (pattern != null)
+			{
+				Matcher matcher = pattern.matcher(text);
+				int start = 0;
+
+				while (matcher.find())
+				{
+					addTrimmed(result, text, start, matcher.start());
+					start = matcher.end();
+				}
+
+				addTrimmed(result, text, start, text.length());
+			}
+			else
+			{
+				int start = 0;
+				int index;
+
+				while ((index = text.indexOf(literal, start)) != -1)
+				{
+					addTrimmed(result, text, start, index);
+					start = index + literal.length();
+				}
+
+				addTrimmed(result, text, start, text.length());
+			}
+
+			return result;
+		}
+
+		/**
+		 * Adds the trimmed part between start and end unless it's empty. Trims like {@link String#trim()}.
+		 */
+		private static void addTrimmed(List<String> result, String text, int start, int end)
+		{
+			while (start < end && text.charAt(start) <= ' ')
+				start++;
+			while (end > start && text.charAt(end - 1) <= ' ')
+				end--;
+
+			if (start < end)
+				result.add(text.substring(start, end));
+		}
+	}
+
+	/**
+	 * A compiled format for {@link #appendProperty(Appendable, String, Object...)}. It consists of literal parts and the specifiers between them,
+	 * each of which is encoded as the argument index times two plus one for <code>%d</code>.
+	 */
+	private static class Template
+	{
+		private static final Template UNSUPPORTED = new Template(null, null);
+
+		private static final Map<Locale, Boolean> ASCII_DIGITS = new ConcurrentHashMap<>();
+
+		private final String[] literals;
+		private final int[]    specifiers;
+
+		private Template(String[] literals, int[] specifiers)
+		{
+			this.literals = literals;
+			this.specifiers = specifiers;
+		}
+
+		private static Template compile(String format)
+		{
+			List<String> literals = new ArrayList<>();
+			List<Integer> specifiers = new ArrayList<>();
+			StringBuilder literal = new StringBuilder();
+			int ordinary = 0;
+			int length = format.length();
+
+			for (int i = 0; i < length; i++)
+			{
+				char c = format.charAt(i);
+
+				if (c != '%')
+				{
+					literal.append(c);
+					continue;
+				}
+
+				if (++i == length)
+					return UNSUPPORTED;
+
+				c = format.charAt(i);
+				int index = -1;
+
+				/* Explicit argument index like %2$s */
+				if (c >= '1' && c <= '9')
+				{
+					index = 0;
+
+					while (i < length && c >= '0' && c <= '9' && index < 10000)
+					{
+						index = index * 10 + (c - '0');
+						c = ++i < length ? format.charAt(i) : 0;
+					}
+
+					if (c != '$' || ++i == length)
+						return UNSUPPORTED;
+
+					c = format.charAt(i);
+					index--;
+				}
+
+				switch (c)
+				{
+					case '%':
+					case 'n':
+						if (index != -1)
+							return UNSUPPORTED;
+
+						literal.append(c == '%' ? "%" : System.lineSeparator());
+						break;
+					case 's':
+					case 'd':
+						if (index == -1)
+							index = ordinary++;
+
+						literals.add(literal.toString());
+						literal.setLength(0);
+						specifiers.add(index * 2 + (c == 'd' ? 1 : 0));
+						break;
+					default:
+						return UNSUPPORTED;
+				}
+			}
+
+			literals.add(literal.toString());
+
+			int[] result = new int[specifiers.size()];
+			for (int i = 0; i < result.length; i++)
+				result[i] = specifiers.get(i);
+
+			return new Template(literals.toArray(new String[0]), result);
+		}
+
+		/**
+		 * Appends the formatted result to the given {@link Appendable}. Nothing is appended if the parameters can't be handled here, in which case
+		 * {@link String#format(String, Object...)} has to be used instead (e.g. to throw the correct exception for missing parameters).
+		 *
+		 * @return <code>true</code> if the result has been appended
+		 */
+		private boolean appendTo(Appendable target, Object[] parameters) throws IOException
+		{
+			if (literals == null)
+				return false;
+
+			for (int specifier : specifiers)
+			{
+				int index = specifier >> 1;
+
+				if (index >= parameters.length)
+					return false;
+
+				Object parameter = parameters[index];
+
+				if ((specifier & 1) == 0)
+				{
+					if (parameter instanceof Formattable)
+						return false;
+				}
+				else if (parameter != null && !(parameter instanceof Integer || parameter instanceof Long || parameter instanceof Short || parameter instanceof Byte) || !hasAsciiDigits())
+				{
+					return false;
+				}
+			}
+
+			for (int i = 0; i < specifiers.length; i++)
+			{
+				target.append(literals[i]);
+				target.append(String.valueOf(parameters[specifiers[i] >> 1]));
+			}
+
+			target.append(literals[specifiers.length]);
+
+			return true;
+		}
+
+		/**
+		 * Checks whether the current format {@link Locale} uses '0' as its zero digit, otherwise {@link Formatter} localizes the digits of
+		 * <code>%d</code>
+		 */
+		private static boolean hasAsciiDigits()
+		{
+			return ASCII_DIGITS.computeIfAbsent(Locale.getDefault(Locale.Category.FORMAT), locale -> DecimalFormatSymbols.getInstance(locale).getZeroDigit() == '0');
+		}
+	}
+
+	/**
+	 * The published properties. An immutable base map and an immutable delta of the changes made since, in which removed properties are mapped to
+	 * <code>null</code>. The delta is merged into a new base once it grows too large.
+	 */
+	private static class Backing
+	{
+		private final Map<String, String> base;
+		private final Map<String, String> delta;
+
+		private Backing(Map<String, String> base, Map<String, String> delta)
+		{
+			this.base = base;
+			this.delta = delta;
+		}
+
+		private String get(String key)
+		{
+			if (!delta.isEmpty())
+			{
+				String value = delta.get(key);
+
+				if (value != null || delta.containsKey(key))
+					return value;
+			}
+
+			return base.get(key);
+		}
+
+		private Backing with(String key, String value)
+		{
+			Map<String, String> changes = new HashMap<>(delta);
+			changes.put(key, value);
+
+			if (changes.size() <= 16 + base.size() / 8)
+				return new Backing(base, Collections.unmodifiableMap(changes));
+
+			Map<String, String> merged = new HashMap<>(base);
+			changes.forEach((k, v) -> {
+				if (v == null)
+					merged.remove(k);
+				else
+					merged.put(k, v);
+			});
+
+			return new Backing(Collections.unmodifiableMap(merged), Collections.emptyMap());
+		}
+
+		private void forEach(BiConsumer<String, String> consumer)
+		{
+			base.forEach((key, value) -> {
+				if (!delta.containsKey(key))
+					consumer.accept(key, value);
+			});
+			delta.forEach((key, value) -> {
+				if (value != null)
+					consumer.accept(key, value);
+			});
+		}
+	}
+
+	/**
+	 * {@link ReloadListener} is notified about properties that have been reloaded after the watched file has changed.
+	 *
+	 * @see #watch(File, Charset)
+	 */
+	public interface ReloadListener
+	{
+		/**
+		 * Called after properties have been reloaded, see {@link #addReloadListener(ReloadListener)}
+		 *
+		 * @param reader The {@link PropertyReader}
+		 * @param keys   The keys of the properties that have changed, been added or been removed
+		 */
+		void onReload(PropertyReader reader, Set<String> keys);
+	}
+
+	/**
+	 * Watches the directory of a properties file and reloads the file once it hasn't changed for {@link #RELOAD_DELAY} milliseconds
+	 */
+	private class Watcher
+	{
+		private final File                     file;
+		private final Charset                  charset;
+		private final WatchService             service;
+		private final ScheduledExecutorService scheduler;
+		private       ScheduledFuture<?>       pending;
+		private       Map<String, String>      content;
+
+		private Watcher(File file, Charset charset) throws IOException
+		{
+			this.file = file;
+			this.charset = charset;
+			this.content = read();
+			this.service = FileSystems.getDefault().newWatchService();
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "PropertyReader-Reload");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+			file.getParentFile().toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+			Thread thread = new Thread(this::watch, "PropertyReader-Watcher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private void watch()
+		{
+			try
+			{
+				while (true)
+				{
+					WatchKey key = service.take();
+
+					for (WatchEvent<?> event : key.pollEvents())
+					{
+						if (file.getName().equals(String.valueOf(event.context())) || event.kind() == StandardWatchEventKinds.OVERFLOW)
+							schedule();
+					}
+
+					if (!key.reset())
+						return;
+				}
+			}
+			catch (InterruptedException | ClosedWatchServiceException e)
+			{
+				/* Stopped watching */
+			}
+		}
+
+		private synchronized void schedule()
+		{
+			if (pending != null)
+				pending.cancel(false);
+
+			pending = scheduler.schedule(this::reloadFile, RELOAD_DELAY, TimeUnit.MILLISECONDS);
+		}
+
+		private void reloadFile()
+		{
+			/* The file may have been deleted or replaced, so keep the current properties until it's back */
+			if (!file.exists())
+				return;
+
+			try
+			{
+				Map<String, String> current = read();
+				reload(content, current);
+				content = current;
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		private Map<String, String> read() throws IOException
+		{
+			Properties loaded = new Properties();
+
+			if (file.exists())
+			{
+				try (Reader reader = new InputStreamReader(new FileInputStream(file), charset))
+				{
+					loaded.load(reader);
+				}
+			}
+
+			Map<String, String> result = new HashMap<>();
+			for (String key : loaded.stringPropertyNames())
+				result.put(key, loaded.getProperty(key));
+			return result;
+		}
+
+		private void close()
+		{
+			scheduler.shutdownNow();
+
+			try
+			{
+				service.close();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * The changes and the captured values of a call to {@link #storeChangesAsync(File, Charset)} that haven't been written yet
+	 */
+	private class PendingStore
+	{
+		private final File        file;
+		private final Charset     charset;
+		private final Set<String> changes;
+		private final Backing     values;
+
+		private PendingStore(File file, Charset charset, Set<String> changes, Backing values)
+		{
+			this.file = file;
+			this.charset = charset;
+			this.changes = changes;
+			this.values = values;
+		}
+
+		private boolean write()
+		{
+			try
+			{
+				writeChanges(file, charset, changes, values);
+				return true;
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+				dirtyKeys.addAll(changes);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * The decoded value of a {@link PropertyKey}
+	 */
+	private static class Decoded
+	{
+		private final PropertyKey<?> key;
+		private final Object         value;
+
+		private Decoded(PropertyKey<?> key, Object value)
+		{
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The size, modification date and checksum of a properties file when it has last been loaded or stored
+	 */
+	private static class FileState
+	{
+		private final long size;
+		private final long modified;
+		private final long checksum;
+
+		private FileState(byte[] content, long modified)
+		{
+			this(ByteBuffer.wrap(content), modified);
+		}
+
+		private FileState(ByteBuffer content, long modified)
+		{
+			this.size = content.remaining();
+			this.modified = modified;
+
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			this.checksum = crc.getValue();
+		}
+
+		private boolean isStateOf(File file)
+		{
+			return file.exists() && file.length() == size && file.lastModified() == modified;
+		}
+
+		private boolean hasContentOf(FileState other)
+		{
+			return size == other.size && checksum == other.checksum;
+		}
 	}
 }
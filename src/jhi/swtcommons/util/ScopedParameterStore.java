@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * {@link ScopedParameterStore} is a {@link ParameterStore} that holds overrides for a specific scope (e.g. a window or a document) and falls back
+ * to the {@link Parameter}s of its parent {@link ParameterStore} otherwise. Parents can be chained.
+ * <p>
+ * Resolved values are cached in a flat map, so a lookup doesn't walk the chain of parents more than once. The cache is invalidated by changes to
+ * the parent, which are reported to the {@link ChangeListener}s of this {@link ParameterStore} unless they are hidden by a local override. They
+ * aren't local writes, so they don't make this {@link ParameterStore} dirty and its {@link WriteListener}s only get {@link
+ * WriteListener#onInvalidate(ParameterStore, Parameter)}. Call {@link #dispose()} once the scope is gone to detach from the parent.
+ *
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public class ScopedParameterStore extends ParameterStore
+{
+	/** Marks a cached {@link Parameter} that has no value in any scope */
+	private static final Object NONE = new Object();
+
+	private final ParameterStore         parent;
+	private final Map<Parameter, Object> resolved   = new ConcurrentHashMap<>();
+	private final AtomicLong             generation = new AtomicLong(0);
+	private final WriteListener          parentListener;
+
+	/**
+	 * Creates a new {@link ScopedParameterStore} that falls back to the given parent
+	 *
+	 * @param parent The parent {@link ParameterStore}
+	 */
+	public ScopedParameterStore(ParameterStore parent)
+	{
+		this.parent = parent;
+		this.parentListener = new WriteListener()
+		{
+			@Override
+			public void onWrite(ParameterStore store, Parameter key, Object previous, Object value)
+			{
+				if (!isOverridden(key))
+					invalidated(key);
+			}
+
+			@Override
+			public void onInvalidate(ParameterStore store, Parameter key)
+			{
+				if (!isOverridden(key))
+					invalidated(key);
+			}
+		};
+
+		parent.addWriteListener(parentListener);
+	}
+
+	/**
+	 * Returns the parent {@link ParameterStore}
+	 *
+	 * @return The parent {@link ParameterStore}
+	 */
+	public ParameterStore getParent()
+	{
+		return parent;
+	}
+
+	/**
+	 * Checks whether the given {@link Parameter} is overridden in this scope
+	 *
+	 * @param key The {@link Parameter} identifier
+	 * @return <code>true</code> if the {@link Parameter} has a value in this scope rather than in one of the parents
+	 */
+	public boolean isOverridden(Parameter key)
+	{
+		return super.hasValue(key);
+	}
+
+	/**
+	 * Detaches this {@link ScopedParameterStore} from its parent. It must not be used afterwards.
+	 */
+	public void dispose()
+	{
+		parent.removeWriteListener(parentListener);
+		resolved.clear();
+	}
+
+	@Override
+	protected Object getValue(Parameter key)
+	{
+		Object value = resolved.get(key);
+
+		if (value != null)
+			return value == NONE ? null : value;
+
+		long current = generation.get();
+
+		value = super.getValue(key);
+		if (value == null)
+			value = parent.get(key);
+
+		resolved.put(key, value == null ? NONE : value);
+
+		/* Something has been invalidated in the meantime, so the value may be outdated */
+		if (generation.get() != current)
+			resolved.remove(key);
+
+		return value;
+	}
+
+	@Override
+	protected boolean hasValue(Parameter key)
+	{
+		return getValue(key) != null;
+	}
+
+	@Override
+	protected void forEachValue(BiConsumer<Parameter, Object> consumer)
+	{
+		Map<Parameter, Object> values = new HashMap<>(parent.snapshot().asMap());
+		super.forEachValue(values::put);
+
+		values.forEach(consumer);
+	}
+
+	/**
+	 * Removes the local overrides. The values of the parents are kept and become visible again.
+	 */
+	@Override
+	public void clear()
+	{
+		Map<Parameter, Object> previous = new LinkedHashMap<>();
+		super.forEachValue(previous::put);
+
+		clearValues();
+
+		previous.forEach((key, value) -> changed(key, value, null));
+	}
+
+	@Override
+	protected void clearValues()
+	{
+		super.clearValues();
+
+		generation.incrementAndGet();
+		resolved.clear();
+	}
+
+	@Override
+	protected void invalidated(Parameter key)
+	{
+		generation.incrementAndGet();
+		resolved.remove(key);
+
+		super.invalidated(key);
+	}
+
+	@Override
+	protected void changed(Parameter key, Object previous, Object value)
+	{
+		generation.incrementAndGet();
+		resolved.remove(key);
+
+		/* Removing a local override reveals the value of the parent */
+		if (value == null && !super.hasValue(key))
+			value = parent.get(key);
+
+		super.changed(key, previous, value);
+	}
+}
@@ -0,0 +1,431 @@
+/*
+ *  Copyright 2018 Information and Computational Sciences,
+ *  The James Hutton Institute.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package jhi.swtcommons.util;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * {@link SharedParameterStore} is a {@link ParameterStore} that keeps the {@link Parameter}s of an enum in a memory-mapped file, so that all
+ * instances of the application running on the same machine share the same live settings.
+ * <p>
+ * Each enum constant owns a fixed slot in the file, indexed by {@link Enum#ordinal()}. A slot consists of a version, the length of the value and
+ * the value in the {@link String} form of its {@link ParameterCodec}. Writers make the version odd while they change the slot and even again
+ * afterwards. Writers are serialized with a {@link FileLock} on the slot. Readers never lock: they read the version before and after reading the
+ * value and retry if it changed. The accesses are ordered by the load and store fences of <code>sun.misc.Unsafe</code>, so reading doesn't write
+ * to any shared memory. Decoded values are cached per slot and version, so reading an unchanged value doesn't parse it again.
+ * <p>
+ * Changes made by other instances are picked up on the next read. Call {@link #refresh()} (e.g. from a timer) to notify the {@link
+ * ChangeListener}s about them. {@link Parameter}s that aren't constants of the enum are kept locally. This store is not cleared on restart.
+ *
+ * @param <E> The enum type of the {@link Parameter}s
+ * @author Sebastian Raubach
+ */
+@SuppressWarnings("unused")
+public class SharedParameterStore<E extends Enum<E> & Parameter> extends ParameterStore implements Closeable
+{
+	private static final int MAGIC          = 0x4A485350;
+	private static final int LAYOUT_VERSION = 1;
+	private static final int HEADER_SIZE    = 16;
+	private static final int SLOT_HEADER    = 12;
+	private static final int ABSENT         = -1;
+	private static final int MAX_RETRIES    = 1000;
+
+	private static final MethodHandle LOAD_FENCE;
+	private static final MethodHandle STORE_FENCE;
+
+	static
+	{
+		try
+		{
+			Class<?> unsafeType = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeType.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			LOAD_FENCE = lookup.findVirtual(unsafeType, "loadFence", MethodType.methodType(void.class)).bindTo(unsafe);
+			STORE_FENCE = lookup.findVirtual(unsafeType, "storeFence", MethodType.methodType(void.class)).bindTo(unsafe);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final Class<E>                      keyType;
+	private final E[]                           constants;
+	private final int                           slotSize;
+	private final FileChannel                   channel;
+	private final MappedByteBuffer              buffer;
+	private final AtomicReferenceArray<Decoded> decoded;
+	private final long[]                        seen;
+
+	/**
+	 * Creates a new {@link SharedParameterStore} or attaches to an existing one
+	 *
+	 * @param file     The shared {@link File}
+	 * @param keyType  The enum {@link Class} of the {@link Parameter}s
+	 * @param slotSize The number of bytes per {@link Parameter}. Values whose {@link String} form is longer than <code>slotSize - 12</code> bytes
+	 *                 (UTF-8) can't be stored.
+	 * @throws IOException Thrown if the file interaction fails or if the file isn't empty and hasn't been created with the same enum size and slot
+	 *                     size
+	 */
+	public SharedParameterStore(File file, Class<E> keyType, int slotSize) throws IOException
+	{
+		this.keyType = keyType;
+		this.constants = keyType.getEnumConstants();
+		this.slotSize = slotSize;
+		this.decoded = new AtomicReferenceArray<>(constants.length);
+		this.seen = new long[constants.length];
+
+		long size = HEADER_SIZE + (long) constants.length * slotSize;
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		FileLock lock = channel.lock();
+
+		try
+		{
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+			/* The magic number is written last, so a file without it has never been initialized completely */
+			if (buffer.getInt(0) == 0)
+			{
+				for (int i = 0; i < constants.length; i++)
+				{
+					buffer.putLong(offset(i), 0);
+					buffer.putInt(offset(i) + 8, ABSENT);
+				}
+
+				buffer.putInt(4, LAYOUT_VERSION);
+				buffer.putInt(8, constants.length);
+				buffer.putInt(12, slotSize);
+				buffer.putInt(0, MAGIC);
+				buffer.force();
+			}
+			else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != LAYOUT_VERSION || buffer.getInt(8) != constants.length || buffer.getInt(12) != slotSize)
+			{
+				/* Other instances may still be using the file, so it must not be reinitialized */
+				throw new IOException("The layout of " + file + " doesn't match " + keyType.getName() + " with a slot size of " + slotSize);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+		finally
+		{
+			if (lock.isValid())
+				lock.release();
+		}
+
+		for (int i = 0; i < constants.length; i++)
+			seen[i] = buffer.getLong(offset(i));
+
+		setClearOnRestart(false);
+	}
+
+	/**
+	 * Creates a new {@link SharedParameterStore} with 256 bytes per {@link Parameter}
+	 *
+	 * @param file    The shared {@link File}
+	 * @param keyType The enum {@link Class} of the {@link Parameter}s
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	public SharedParameterStore(File file, Class<E> keyType) throws IOException
+	{
+		this(file, keyType, 256);
+	}
+
+	/**
+	 * Checks all slots for changes made by other instances and notifies the {@link ChangeListener}s and {@link WriteListener}s about them. The
+	 * listeners are called without holding the lock of this {@link SharedParameterStore}, since they may write to it.
+	 */
+	public void refresh()
+	{
+		List<E> changes = new ArrayList<>();
+
+		synchronized (this)
+		{
+			for (int i = 0; i < constants.length; i++)
+			{
+				long version = buffer.getLong(offset(i));
+
+				if (version != seen[i] && (version & 1) == 0)
+				{
+					seen[i] = version;
+					changes.add(constants[i]);
+				}
+			}
+		}
+
+		for (E key : changes)
+			changed(key, null, getValue(key));
+	}
+
+	/**
+	 * Closes the underlying {@link FileChannel}. The {@link SharedParameterStore} must not be used afterwards.
+	 *
+	 * @throws IOException Thrown if the file interaction fails
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	private int slot(Parameter key)
+	{
+		return keyType.isInstance(key) ? ((Enum<?>) key).ordinal() : -1;
+	}
+
+	private int offset(int slot)
+	{
+		return HEADER_SIZE + slot * slotSize;
+	}
+
+	@Override
+	protected Object getValue(Parameter key)
+	{
+		int slot = slot(key);
+
+		if (slot < 0)
+			return super.getValue(key);
+		else
+			return read(slot);
+	}
+
+	@Override
+	protected Object putValue(Parameter key, Object value)
+	{
+		int slot = slot(key);
+
+		if (slot < 0)
+			return super.putValue(key, value);
+
+		Object previous = read(slot);
+		write(slot, value);
+		return previous;
+	}
+
+	@Override
+	protected Object removeValue(Parameter key)
+	{
+		int slot = slot(key);
+
+		if (slot < 0)
+			return super.removeValue(key);
+
+		Object previous = read(slot);
+		write(slot, null);
+		return previous;
+	}
+
+	@Override
+	protected boolean hasValue(Parameter key)
+	{
+		return getValue(key) != null;
+	}
+
+	@Override
+	protected void forEachValue(BiConsumer<Parameter, Object> consumer)
+	{
+		for (int i = 0; i < constants.length; i++)
+		{
+			Object value = read(i);
+
+			if (value != null)
+				consumer.accept(constants[i], value);
+		}
+
+		super.forEachValue(consumer);
+	}
+
+	@Override
+	protected void clearValues()
+	{
+		for (int i = 0; i < constants.length; i++)
+			write(i, null);
+
+		super.clearValues();
+	}
+
+	/**
+	 * Reads the value of the given slot without locking. Returns the cached value if the version of the slot hasn't changed since it was decoded.
+	 */
+	private Object read(int slot)
+	{
+		int offset = offset(slot);
+
+		for (int i = 0; i < MAX_RETRIES; i++)
+		{
+			long before = buffer.getLong(offset);
+			loadFence();
+
+			/* A writer is changing the slot */
+			if ((before & 1) != 0)
+			{
+				Thread.yield();
+				continue;
+			}
+
+			Decoded cached = decoded.get(slot);
+			if (cached != null && cached.version == before)
+				return cached.value;
+
+			int length = buffer.getInt(offset + 8);
+			byte[] bytes = null;
+
+			if (length >= 0 && length <= slotSize - SLOT_HEADER)
+			{
+				bytes = new byte[length];
+				for (int j = 0; j < length; j++)
+					bytes[j] = buffer.get(offset + SLOT_HEADER + j);
+			}
+
+			loadFence();
+			long after = buffer.getLong(offset);
+
+			if (before != after)
+				continue;
+
+			Object value = null;
+			if (bytes != null)
+			{
+				ParameterCodec<?> codec = getCodec(constants[slot]);
+				String string = new String(bytes, StandardCharsets.UTF_8);
+
+				value = codec == null ? string : codec.parse(string);
+			}
+
+			decoded.set(slot, new Decoded(before, value));
+			return value;
+		}
+
+		/* The slot is still inconsistent, most likely because another instance crashed while writing it */
+		Decoded cached = decoded.get(slot);
+		return cached == null ? null : cached.value;
+	}
+
+	/**
+	 * Writes the given value to the given slot while holding a {@link FileLock} on it
+	 */
+	private synchronized void write(int slot, Object value)
+	{
+		byte[] bytes = value == null ? null : ParameterCodecs.format(constants[slot], value).getBytes(StandardCharsets.UTF_8);
+
+		if (bytes != null && bytes.length > slotSize - SLOT_HEADER)
+			throw new IllegalArgumentException("Value of " + constants[slot].getName() + " exceeds the slot size of " + slotSize + " bytes");
+
+		int offset = offset(slot);
+
+		try
+		{
+			FileLock lock = channel.lock(offset, slotSize, false);
+
+			try
+			{
+				/* An odd version at this point has been left behind by a crashed writer, so keep it odd */
+				long version = buffer.getLong(offset) | 1;
+
+				buffer.putLong(offset, version);
+				storeFence();
+
+				if (bytes == null)
+				{
+					buffer.putInt(offset + 8, ABSENT);
+				}
+				else
+				{
+					buffer.putInt(offset + 8, bytes.length);
+					for (int i = 0; i < bytes.length; i++)
+						buffer.put(offset + SLOT_HEADER + i, bytes[i]);
+				}
+
+				storeFence();
+				buffer.putLong(offset, version + 1);
+
+				seen[slot] = version + 1;
+			}
+			finally
+			{
+				lock.release();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Keeps loads from being reordered across this point
+	 */
+	private static void loadFence()
+	{
+		try
+		{
+			LOAD_FENCE.invokeExact();
+		}
+		catch (Throwable e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Keeps stores from being reordered across this point
+	 */
+	private static void storeFence()
+	{
+		try
+		{
+			STORE_FENCE.invokeExact();
+		}
+		catch (Throwable e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * The decoded value of a slot at a given version
+	 */
+	private static class Decoded
+	{
+		private final long   version;
+		private final Object value;
+
+		private Decoded(long version, Object value)
+		{
+			this.version = version;
+			this.value = value;
+		}
+	}
+}